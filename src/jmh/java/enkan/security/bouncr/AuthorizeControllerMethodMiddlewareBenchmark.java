@@ -0,0 +1,85 @@
+package enkan.security.bouncr;
+
+import enkan.Endpoint;
+import enkan.MiddlewareChain;
+import enkan.chain.DefaultMiddlewareChain;
+import enkan.collection.Headers;
+import enkan.data.DefaultHttpRequest;
+import enkan.data.HttpRequest;
+import enkan.data.HttpResponse;
+import enkan.data.Routable;
+import enkan.util.Predicates;
+import jakarta.annotation.security.RolesAllowed;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request cost of the {@link RolesAllowed} check for principals with varying permission counts.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorizeControllerMethodMiddlewareBenchmark {
+    @Param({"1", "16", "256"})
+    private int permissionCount;
+
+    @Param({"allowed", "denied", "unannotated"})
+    private String method;
+
+    private AuthorizeControllerMethodMiddleware<HttpResponse> middleware;
+    private MiddlewareChain<HttpRequest, HttpResponse, HttpRequest, HttpResponse> chain;
+    private RoutableRequest request;
+
+    static class Controller {
+        @RolesAllowed({"admin", "permission:0"})
+        public void allowed() {}
+
+        @RolesAllowed({"admin", "superuser"})
+        public void denied() {}
+
+        public void unannotated() {}
+    }
+
+    static class RoutableRequest extends DefaultHttpRequest implements Routable {
+        private Principal principal;
+
+        @Override
+        public Principal getPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public void setPrincipal(Principal principal) {
+            this.principal = principal;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        middleware = new AuthorizeControllerMethodMiddleware<>();
+        Endpoint<HttpRequest, HttpResponse> endpoint = r -> HttpResponse.of("OK");
+        chain = new DefaultMiddlewareChain<>(Predicates.any(), "endpoint", endpoint);
+
+        Set<String> permissions = new HashSet<>();
+        for (int i = 0; i < permissionCount; i++) {
+            permissions.add("permission:" + i);
+        }
+        request = new RoutableRequest();
+        request.setHeaders(Headers.empty());
+        request.setControllerMethod(Controller.class.getMethod(method));
+        request.setPrincipal(new UserPermissionPrincipal(1L, "kawasima", new HashMap<>(), permissions));
+    }
+
+    @Benchmark
+    public HttpResponse handle() {
+        return middleware.handle(request, chain);
+    }
+}
@@ -0,0 +1,102 @@
+package enkan.security.bouncr;
+
+import enkan.collection.Headers;
+import enkan.data.DefaultHttpRequest;
+import enkan.data.HttpRequest;
+import enkan.system.EnkanSystem;
+import net.unit8.bouncr.sign.JsonWebToken;
+import net.unit8.bouncr.sign.JwtHeader;
+import net.unit8.bouncr.sign.JwtKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Principal;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request authentication cost of {@link BouncrBackend}: parse followed by authenticate.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BouncrBackendBenchmark {
+    @Param({"HS256", "RS256"})
+    private String alg;
+
+    @Param({"10", "200"})
+    private int permissionCount;
+
+    /** Size of the verified-token cache; 0 disables it. */
+    @Param({"0", "1024"})
+    private int cacheMaxSize;
+
+    private EnkanSystem system;
+    private BouncrBackend backend;
+    private HttpRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        system = EnkanSystem.of("jwt", new JsonWebToken());
+        system.start();
+        JsonWebToken jwt = system.getComponent("jwt");
+
+        backend = new BouncrBackend();
+        backend.setJwt(jwt);
+        backend.setCacheMaxSize(cacheMaxSize);
+
+        JwtHeader header = new JwtHeader();
+        header.setAlg(alg);
+        JwtKey signingKey;
+        if (alg.startsWith("HS")) {
+            byte[] secret = "benchmark-secret-key-for-hmac".getBytes();
+            signingKey = JwtKey.hmac(secret);
+            backend.setKey(secret);
+        } else {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keyPair = generator.generateKeyPair();
+            signingKey = JwtKey.of(keyPair.getPrivate());
+            backend.setPublicKey(keyPair.getPublic());
+        }
+
+        List<String> permissions = new ArrayList<>();
+        for (int i = 0; i < permissionCount; i++) {
+            permissions.add("permission:" + i);
+        }
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("uid", 42);
+        claims.put("sub", "kawasima");
+        claims.put("email", "kawasima@example.com");
+        claims.put("permissions", permissions);
+        String token = jwt.sign(claims, header, signingKey);
+
+        DefaultHttpRequest req = new DefaultHttpRequest();
+        req.setHeaders(Headers.of("x-bouncr-credential", token));
+        request = req;
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.stop();
+    }
+
+    @Benchmark
+    public Principal parseAndAuthenticate() {
+        // Every invocation stands for a new request, so forget the outcome of the previous one.
+        request.setExtension(BouncrBackend.VERIFIED_CREDENTIAL, null);
+        return backend.authenticate(request, backend.parse(request));
+    }
+}
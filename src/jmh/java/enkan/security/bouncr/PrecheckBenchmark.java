@@ -0,0 +1,78 @@
+package enkan.security.bouncr;
+
+import enkan.collection.Headers;
+import enkan.data.DefaultHttpRequest;
+import enkan.data.HttpRequest;
+import enkan.system.EnkanSystem;
+import net.unit8.bouncr.sign.JsonWebToken;
+import net.unit8.bouncr.sign.JwtHeader;
+import net.unit8.bouncr.sign.JwtKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.Security;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of rejecting an implausible credential in {@link BouncrBackend#parse},
+ * with and without the precheck.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrecheckBenchmark {
+    /** oversized: 64 KiB of base64url; truncated: an HS256 token missing the last signature character. */
+    @Param({"oversized", "truncated"})
+    private String credential;
+
+    @Param({"true", "false"})
+    private boolean precheck;
+
+    private EnkanSystem system;
+    private BouncrBackend backend;
+    private HttpRequest request;
+
+    @Setup
+    public void setup() {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        system = EnkanSystem.of("jwt", new JsonWebToken());
+        system.start();
+        JsonWebToken jwt = system.getComponent("jwt");
+
+        byte[] secret = "benchmark-secret-key-for-hmac".getBytes();
+        backend = new BouncrBackend();
+        backend.setJwt(jwt);
+        backend.setKey(secret);
+        backend.setPrecheck(precheck);
+        // Measure the rejection itself rather than the negative cache.
+        backend.setNegativeCacheMaxSize(0);
+
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, JwtKey.hmac(secret));
+        String value = credential.equals("oversized")
+                ? token.substring(0, token.indexOf('.') + 1) + "A".repeat(65536) + ".AAAA"
+                : token.substring(0, token.length() - 1);
+
+        DefaultHttpRequest req = new DefaultHttpRequest();
+        req.setHeaders(Headers.of("x-bouncr-credential", value));
+        request = req;
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.stop();
+    }
+
+    @Benchmark
+    public Map<String, Object> parse() {
+        request.setExtension(BouncrBackend.VERIFIED_CREDENTIAL, null);
+        return backend.parse(request);
+    }
+}
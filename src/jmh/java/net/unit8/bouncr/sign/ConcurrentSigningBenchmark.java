@@ -0,0 +1,76 @@
+package net.unit8.bouncr.sign;
+
+import enkan.system.EnkanSystem;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing throughput of randomized algorithms as the number of signing threads grows,
+ * with one shared SecureRandom ({@code prngStripes=1}) versus striped DRBG instances.
+ *
+ * Compare the score of {@code threads1}, {@code threads4} and {@code threadsMax} for each stripe count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentSigningBenchmark {
+    @Param({"PS256", "ES256"})
+    private String alg;
+
+    @Param({"1", "64"})
+    private int prngStripes;
+
+    private EnkanSystem system;
+    private JsonWebToken jwt;
+    private JwtHeader header;
+    private JwtKey signingKey;
+    private final Map<String, Object> claims = Map.of("sub", "kawasima");
+
+    @Setup
+    public void setup() throws Exception {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        JsonWebToken component = new JsonWebToken();
+        component.setPrngStripes(prngStripes);
+        system = EnkanSystem.of("jwt", component);
+        system.start();
+        jwt = system.getComponent("jwt");
+
+        header = new JwtHeader();
+        header.setAlg(alg);
+        KeyPair keyPair = JsonWebTokenBenchmark.generateKeyPair(alg);
+        signingKey = JwtKey.of(keyPair.getPrivate());
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String threads1() {
+        return jwt.sign(claims, header, signingKey);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String threads4() {
+        return jwt.sign(claims, header, signingKey);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String threadsMax() {
+        return jwt.sign(claims, header, signingKey);
+    }
+}
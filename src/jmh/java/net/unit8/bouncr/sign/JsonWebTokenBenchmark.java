@@ -0,0 +1,108 @@
+package net.unit8.bouncr.sign;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import enkan.system.EnkanSystem;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.spec.ECGenParameterSpec;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sign and verify throughput of {@link JsonWebToken} per algorithm and payload size.
+ *
+ * RSA keys are 2048 bits, ES256 uses P-256 and EdDSA uses Ed25519.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonWebTokenBenchmark {
+    private static final TypeReference<Map<String, Object>> CLAIMS_TYPE = new TypeReference<>() {};
+
+    @Param({"HS256", "HS384", "HS512", "RS256", "PS256", "ES256", "EdDSA"})
+    private String alg;
+
+    /** Number of extra claims besides {@code sub}. */
+    @Param({"0", "16", "128"})
+    private int claimCount;
+
+    private EnkanSystem system;
+    private JsonWebToken jwt;
+    private JwtHeader header;
+    private JwtKey signingKey;
+    private JwtKey verificationKey;
+    private Map<String, Object> claims;
+    private String token;
+
+    @Setup
+    public void setup() throws Exception {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        system = EnkanSystem.of("jwt", new JsonWebToken());
+        system.start();
+        jwt = system.getComponent("jwt");
+
+        header = new JwtHeader();
+        header.setAlg(alg);
+        if (alg.startsWith("HS")) {
+            signingKey = verificationKey = JwtKey.hmac("benchmark-secret-key-for-hmac-512-bits-0123456789abcdef0123456789"
+                    .getBytes(StandardCharsets.UTF_8));
+        } else {
+            KeyPair keyPair = generateKeyPair(alg);
+            signingKey = JwtKey.of(keyPair.getPrivate());
+            verificationKey = JwtKey.of(keyPair.getPublic());
+        }
+
+        claims = new HashMap<>();
+        claims.put("sub", "kawasima");
+        for (int i = 0; i < claimCount; i++) {
+            claims.put("claim" + i, "value-of-claim-" + i);
+        }
+        token = jwt.sign(claims, header, signingKey);
+    }
+
+    static KeyPair generateKeyPair(String alg) throws Exception {
+        KeyPairGenerator generator;
+        if (alg.startsWith("ES")) {
+            generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+        } else if (alg.startsWith("Ed")) {
+            generator = KeyPairGenerator.getInstance("Ed25519");
+        } else {
+            generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+        }
+        return generator.generateKeyPair();
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.stop();
+    }
+
+    @Benchmark
+    public String sign() {
+        return jwt.sign(claims, header, signingKey);
+    }
+
+    @Benchmark
+    public Map<String, Object> unsign() {
+        return jwt.unsign(token, verificationKey, CLAIMS_TYPE);
+    }
+
+    /** Verifies and reads only {@code sub}, leaving the other claims unbound. */
+    @Benchmark
+    public Object verifyAndReadSub() {
+        return jwt.verify(token, verificationKey).getClaim("sub");
+    }
+}
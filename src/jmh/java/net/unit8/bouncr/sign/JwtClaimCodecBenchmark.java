@@ -0,0 +1,70 @@
+package net.unit8.bouncr.sign;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading an OIDC ID token payload with {@link JwtClaimCodec} versus the mapper.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtClaimCodecBenchmark {
+    private ObjectMapper mapper;
+    private JwtClaim claim;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws Exception {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        mapper.configure(DeserializationFeature.UNWRAP_SINGLE_VALUE_ARRAYS, true);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        claim = new JwtClaim();
+        claim.setIss("https://bouncr.example.com");
+        claim.setSub("kawasima");
+        claim.setAud("my-client");
+        claim.setExp(4102444800L);
+        claim.setIat(1700000000L);
+        claim.setAuthTime(1700000000L);
+        claim.setNonce("n-0S6_WzA2Mj");
+        claim.setName("Yoshitaka Kawashima");
+        claim.setGivenName("Yoshitaka");
+        claim.setFamilyName("Kawashima");
+        claim.setPreferredUsername("kawasima");
+        claim.setEmail("kawasima@example.com");
+        claim.setEmailVerified(true);
+        claim.setLocale("ja-JP");
+        json = mapper.writeValueAsBytes(claim);
+    }
+
+    @Benchmark
+    public byte[] writeWithMapper() throws Exception {
+        return mapper.writeValueAsBytes(claim);
+    }
+
+    @Benchmark
+    public byte[] writeWithCodec() throws Exception {
+        return JwtClaimCodec.write(mapper, claim);
+    }
+
+    @Benchmark
+    public JwtClaim readWithMapper() throws Exception {
+        return mapper.readValue(json, 0, json.length, JwtClaim.class);
+    }
+
+    @Benchmark
+    public JwtClaim readWithCodec() throws Exception {
+        return JwtClaimCodec.read(mapper, json, 0, json.length);
+    }
+}
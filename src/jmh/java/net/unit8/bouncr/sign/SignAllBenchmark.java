@@ -0,0 +1,71 @@
+package net.unit8.bouncr.sign;
+
+import enkan.system.EnkanSystem;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing a batch of claims with {@link JsonWebToken#signAll} against a sequential loop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignAllBenchmark {
+    @Param({"RS256", "ES256"})
+    private String alg;
+
+    @Param({"256"})
+    private int batchSize;
+
+    private EnkanSystem system;
+    private JsonWebToken jwt;
+    private JwtHeader header;
+    private JwtKey signingKey;
+    private List<Map<String, Object>> claims;
+
+    @Setup
+    public void setup() throws Exception {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        system = EnkanSystem.of("jwt", new JsonWebToken());
+        system.start();
+        jwt = system.getComponent("jwt");
+
+        header = new JwtHeader();
+        header.setAlg(alg);
+        signingKey = JwtKey.of(JsonWebTokenBenchmark.generateKeyPair(alg).getPrivate());
+        claims = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            claims.add(Map.of("sub", "service-account-" + i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.stop();
+    }
+
+    @Benchmark
+    public List<String> sequential() {
+        List<String> tokens = new ArrayList<>(claims.size());
+        for (Map<String, Object> claim : claims) {
+            tokens.add(jwt.sign(claim, header, signingKey));
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public List<String> signAll() {
+        return jwt.signAll(claims, header, signingKey);
+    }
+}
@@ -0,0 +1,74 @@
+package net.unit8.bouncr.sign;
+
+import enkan.system.EnkanSystem;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifying a batch of tokens with {@link JsonWebToken#verifyAll} against a sequential loop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VerifyAllBenchmark {
+    @Param({"RS256", "ES256"})
+    private String alg;
+
+    @Param({"256"})
+    private int batchSize;
+
+    private EnkanSystem system;
+    private JsonWebToken jwt;
+    private JwtKey verificationKey;
+    private List<String> tokens;
+
+    @Setup
+    public void setup() throws Exception {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        system = EnkanSystem.of("jwt", new JsonWebToken());
+        system.start();
+        jwt = system.getComponent("jwt");
+
+        JwtHeader header = new JwtHeader();
+        header.setAlg(alg);
+        KeyPair keyPair = JsonWebTokenBenchmark.generateKeyPair(alg);
+        verificationKey = JwtKey.of(keyPair.getPublic());
+        List<Map<String, Object>> claims = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            claims.add(Map.of("sub", "upstream-user-" + i));
+        }
+        tokens = jwt.signAll(claims, header, JwtKey.of(keyPair.getPrivate()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.stop();
+    }
+
+    @Benchmark
+    public List<VerifiedJwt> sequential() {
+        List<VerifiedJwt> results = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            results.add(jwt.verify(token, verificationKey));
+        }
+        return results;
+    }
+
+    @Benchmark
+    public List<VerifiedJwt> verifyAll() {
+        return jwt.verifyAll(tokens, verificationKey, ForkJoinPool.commonPool());
+    }
+}
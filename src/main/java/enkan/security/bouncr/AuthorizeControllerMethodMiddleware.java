@@ -7,41 +7,76 @@ import enkan.data.HttpResponse;
 import enkan.data.Routable;
 import enkan.middleware.AbstractWebMiddleware;
 import enkan.security.UserPrincipal;
+import net.unit8.bouncr.sign.BouncrMetrics;
 
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
 import java.lang.reflect.Method;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static enkan.util.BeanBuilder.*;
 
 /**
  * Middleware for annotation-based authorization using {@link jakarta.annotation.security.RolesAllowed}.
  *
+ * The permissions required by a controller method are read from its annotation once
+ * and cached for subsequent requests.
+ *
  * @author kawasima
  */
 @Middleware(name = "authorizeControllerMethod", dependencies = "routing")
 public class AuthorizeControllerMethodMiddleware<NRES> extends AbstractWebMiddleware<HttpRequest, NRES> {
+    /** Marks a method without {@link RolesAllowed}. Distinct from an empty annotation, which allows nobody. */
+    private static final String[] NO_CONSTRAINT = new String[0];
+
+    private final ConcurrentHashMap<Method, String[]> requiredPermissions = new ConcurrentHashMap<>();
+
+    @Inject
+    private BouncrMetrics metrics = BouncrMetrics.NOOP;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public <NNREQ, NNRES> HttpResponse handle(HttpRequest request, MiddlewareChain<HttpRequest, NRES, NNREQ, NNRES> chain) {
         Method m = ((Routable) request).getControllerMethod();
-        Optional<UserPrincipal> principal = Stream.of(request.getPrincipal())
-                .filter(UserPrincipal.class::isInstance)
-                .map(UserPrincipal.class::cast)
-                .findAny();
-
-        RolesAllowed rolesAllowed = m.getAnnotation(RolesAllowed.class);
-        if (rolesAllowed != null) {
-            if (!principal.isPresent() || !Stream.of(rolesAllowed.value())
-                    .anyMatch(permission -> principal.filter(p -> p.hasPermission(permission)).isPresent())) {
-                return builder(HttpResponse.of("Not allowed"))
-                        .set(HttpResponse::setStatus, 403)
-                        .build();
-            }
+        String[] permissions = requiredPermissions(m);
+        if (permissions != NO_CONSTRAINT && !isAllowed(request, permissions)) {
+            metrics.recordDenial(m);
+            return builder(HttpResponse.of("Not allowed"))
+                    .set(HttpResponse::setStatus, 403)
+                    .build();
         }
         return castToHttpResponse(chain.next(request));
     }
+
+    private String[] requiredPermissions(Method m) {
+        String[] permissions = requiredPermissions.get(m);
+        if (permissions == null) {
+            permissions = requiredPermissions.computeIfAbsent(m, method -> {
+                RolesAllowed rolesAllowed = method.getAnnotation(RolesAllowed.class);
+                return rolesAllowed != null ? rolesAllowed.value().clone() : NO_CONSTRAINT;
+            });
+        }
+        return permissions;
+    }
+
+    private static boolean isAllowed(HttpRequest request, String[] permissions) {
+        if (!(request.getPrincipal() instanceof UserPrincipal principal)) {
+            return false;
+        }
+        for (String permission : permissions) {
+            if (principal.hasPermission(permission)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets the receiver of denial counts.
+     *
+     * @param metrics the metrics, or null to disable measurements
+     */
+    public void setMetrics(BouncrMetrics metrics) {
+        this.metrics = metrics != null ? metrics : BouncrMetrics.NOOP;
+    }
 }
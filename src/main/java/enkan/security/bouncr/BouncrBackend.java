@@ -1,77 +1,355 @@
 package enkan.security.bouncr;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import enkan.data.HttpRequest;
 import enkan.security.AuthBackend;
+import net.unit8.bouncr.sign.BouncrMetrics;
 import net.unit8.bouncr.sign.JsonWebToken;
+import net.unit8.bouncr.sign.JwtKey;
+import net.unit8.bouncr.sign.JwtKeyResolver;
+import net.unit8.bouncr.sign.VerificationFailure;
 
 import jakarta.inject.Inject;
 import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.security.PublicKey;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static enkan.util.ThreadingUtils.some;
 
 public class BouncrBackend implements AuthBackend<HttpRequest, Map<String, Object>> {
     private PublicKey publicKey;
     private byte[] key;
+    private JwtKey verificationKey;
+    private JwtKeyResolver keyResolver;
+    /** The key generation of the resolver that the cached results were verified with. */
+    private volatile long keyGeneration;
+    private String algorithm;
+
+    private boolean precheck = true;
+    private int maxCredentialLength = 8192;
+
+    private int cacheMaxSize = 1024;
+    private Duration cacheTtl = Duration.ofMinutes(5);
+    private CredentialCache<BouncrClaims.Payload> cache = new CredentialCache<>(cacheMaxSize, cacheTtl.toMillis());
+
+    private int negativeCacheMaxSize = 4096;
+    private Duration negativeCacheTtl = Duration.ofSeconds(10);
+    private CredentialCache<Boolean> negativeCache = new CredentialCache<>(negativeCacheMaxSize, negativeCacheTtl.toMillis());
+
+    private SingleFlight<CredentialDigest, BouncrClaims.Payload> singleFlight = new SingleFlight<>(Duration.ofSeconds(1).toNanos());
 
     @Inject
     private JsonWebToken jwt;
 
+    @Inject
+    private BouncrMetrics metrics = BouncrMetrics.NOOP;
+
+    /** The request extension that remembers the outcome of verifying the credential of the request. */
+    static final String VERIFIED_CREDENTIAL = "bouncrVerifiedCredential";
+
+    /**
+     * The outcome of verifying a credential for a request. A null payload means the credential was rejected.
+     */
+    private record VerifiedCredential(BouncrBackend backend, String credential, BouncrClaims.Payload payload) {
+    }
+
     @Override
     public Map<String, Object> parse(HttpRequest request) {
-        if (publicKey != null && key != null) {
+        if ((publicKey != null ? 1 : 0) + (key != null ? 1 : 0) + (keyResolver != null ? 1 : 0) > 1) {
             throw new enkan.exception.MisconfigurationException("bouncr.AMBIGUOUS_KEY_CONFIG",
-                    "Configure either publicKey (RSA) or key (HMAC), not both.");
+                    "Configure only one of publicKey (RSA, EC or EdDSA), key (HMAC) or keyResolver.");
+        }
+        String credential = request.getHeaders().get("x-bouncr-credential");
+        if (credential == null) return null;
+
+        // Reject implausible credentials before touching the caches or any crypto.
+        if (precheck) {
+            VerificationFailure failure = jwt.precheck(credential, maxCredentialLength,
+                    keyResolver == null ? verificationKey : null);
+            if (failure != null) {
+                metrics.recordVerificationFailure(failure);
+                return null;
+            }
+        }
+
+        // A second parse of the same request reuses the outcome of the first.
+        BouncrClaims.Payload payload;
+        VerifiedCredential verified = request.getExtension(VERIFIED_CREDENTIAL);
+        if (verified != null && verified.backend() == this && verified.credential().equals(credential)) {
+            payload = verified.payload();
+        } else {
+            payload = some(credential, this::verifyPayload).orElse(null);
+            request.setExtension(VERIFIED_CREDENTIAL, new VerifiedCredential(this, credential, payload));
+        }
+        // Every call gets its own view, because authenticate() may remove entries from it.
+        return payload != null ? new BouncrClaims(payload) : null;
+    }
+
+    private BouncrClaims.Payload verifyPayload(String credential) {
+        CredentialCache<BouncrClaims.Payload> cache = this.cache;
+        CredentialCache<Boolean> negativeCache = this.negativeCache;
+        SingleFlight<CredentialDigest, BouncrClaims.Payload> singleFlight = this.singleFlight;
+        if (cache == null && negativeCache == null && singleFlight == null) return unsign(credential);
+
+        // Results verified with keys that have since been rotated or revoked are dropped.
+        JwtKeyResolver keyResolver = this.keyResolver;
+        long generation = keyResolver != null ? keyResolver.getGeneration() : 0L;
+        if (generation != keyGeneration) {
+            keyGeneration = generation;
+            clearCache();
         }
-        return some(request.getHeaders().get("x-bouncr-credential"),
-                cred -> {
-                    if (publicKey != null) {
-                        return jwt.unsign(cred, publicKey, new TypeReference<Map<String, Object>>() {});
-                    } else {
-                        return jwt.unsign(cred, key, new TypeReference<Map<String, Object>>() {});
-                    }
-                })
-                .orElse(null);
-    }
-
-    @SuppressWarnings("unchecked")
+
+        CredentialDigest digest = CredentialDigest.of(credential);
+        long now = System.currentTimeMillis();
+        BouncrMetrics metrics = this.metrics;
+        if (cache != null) {
+            BouncrClaims.Payload payload = cache.get(digest, now);
+            metrics.recordCacheAccess(BouncrMetrics.CREDENTIAL_CACHE, payload != null);
+            if (payload != null) return payload;
+        }
+        // A credential that recently failed is rejected without running the signature check again.
+        if (negativeCache != null) {
+            boolean rejected = negativeCache.get(digest, now) != null;
+            metrics.recordCacheAccess(BouncrMetrics.NEGATIVE_CACHE, rejected);
+            if (rejected) return null;
+        }
+
+        // Concurrent requests with the same fresh credential share one verification.
+        BouncrClaims.Payload payload = singleFlight != null
+                ? singleFlight.run(digest, () -> unsign(credential))
+                : unsign(credential);
+        // The keys changed during the verification, so its result is not remembered.
+        if (keyResolver != null && keyResolver.getGeneration() != generation) return payload;
+        if (payload == null) {
+            if (negativeCache != null) negativeCache.put(digest, Boolean.TRUE, Long.MAX_VALUE, now);
+            return null;
+        }
+        if (cache != null) cache.put(digest, payload, validUntil(payload), now);
+        return payload;
+    }
+
+    /**
+     * @return the epoch millis until which the verifier accepts the payload: its exp, or
+     *         its iat plus the verifier's max age if that comes first
+     */
+    private long validUntil(BouncrClaims.Payload payload) {
+        long expiresAt = payload.getExpiresAt();
+        Duration maxAge = jwt.getMaxAge();
+        long issuedAt = payload.getIssuedAt();
+        if (maxAge == null || issuedAt == Long.MIN_VALUE) return expiresAt;
+        long maxAgeMillis = maxAge.toMillis();
+        return issuedAt < Long.MAX_VALUE - maxAgeMillis ? Math.min(expiresAt, issuedAt + maxAgeMillis) : expiresAt;
+    }
+
+    private BouncrClaims.Payload unsign(String credential) {
+        if (keyResolver != null) {
+            return jwt.unsign(credential, keyResolver, BouncrClaims.Payload::read);
+        }
+        if (verificationKey == null) return null;
+        return jwt.unsign(credential, verificationKey, BouncrClaims.Payload::read);
+    }
+
     @Override
     public Principal authenticate(HttpRequest request, Map<String, Object> authenticationData) {
         if (authenticationData == null) return null;
+        if (authenticationData instanceof BouncrClaims claims && claims.isUntouched()
+                && claims.getPayload().isRegular()) {
+            BouncrClaims.Payload payload = claims.getPayload();
+            return new UserPermissionPrincipal(Long.valueOf(Objects.toString(payload.getUid(), "0")),
+                    payload.getSub(), new BouncrClaims.Profiles(payload),
+                    PermissionSet.of(PermissionRegistry.getDefault(), payload.getPermissions()));
+        }
 
         // Intentionally destructive: remove known fields so the remaining entries
         // form the 'profiles' map passed to UserPermissionPrincipal.
         Long id = Long.valueOf(Objects.toString(authenticationData.remove("uid"), "0"));
         String account = (String) authenticationData.remove("sub");
-        List permissions = Optional.ofNullable(authenticationData.remove("permissions"))
-                .filter(List.class::isInstance)
-                .map(List.class::cast)
-                .orElse(Collections.emptyList());
+        Object permissions = authenticationData.remove("permissions");
         return new UserPermissionPrincipal(id, account, authenticationData,
-                (Set<String>) permissions.stream()
-                        .filter(Objects::nonNull)
-                        .map(Objects::toString)
-                        .collect(Collectors.toSet())
-        );
+                PermissionSet.of(PermissionRegistry.getDefault(),
+                        permissions instanceof List ? (List<?>) permissions : List.of()));
     }
 
     public void setPublicKey(PublicKey publicKey) {
         this.publicKey = publicKey;
+        this.verificationKey = pin(some(publicKey, JwtKey::of).orElse(null));
+        clearCache();
     }
 
     public void setKey(String key) {
-        this.key = key.getBytes(StandardCharsets.UTF_8);
+        setKey(key.getBytes(StandardCharsets.UTF_8));
     }
 
     public void setKey(byte[] key) {
         this.key = key;
+        this.verificationKey = pin(some(key, JwtKey::hmac).orElse(null));
+        clearCache();
+    }
+
+    /**
+     * Accepts only credentials whose {@code alg} header is the given algorithm, e.g. RS256.
+     * A credential with any other algorithm is rejected before its signature is checked.
+     * Applies to the key set by {@link #setPublicKey} or {@link #setKey}. Keys of a resolver
+     * are pinned with {@link JwtKey#withAlgorithm}.
+     *
+     * @param algorithm the JWS algorithm, or null to accept any algorithm compatible with the key
+     */
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+        if (publicKey != null) {
+            this.verificationKey = pin(JwtKey.of(publicKey));
+        } else if (key != null) {
+            this.verificationKey = pin(JwtKey.hmac(key));
+        }
+        clearCache();
+    }
+
+    /**
+     * Enables the cheap checks of a credential before it is looked up or verified: its length, its form
+     * as three base64url segments, its algorithm and the length of its signature. Enabled by default.
+     *
+     * @param precheck false to pass every credential to verification
+     */
+    public void setPrecheck(boolean precheck) {
+        this.precheck = precheck;
+    }
+
+    /**
+     * Sets the maximum length of a credential. Longer credentials are rejected without verification.
+     * Defaults to 8192 characters.
+     *
+     * @param maxCredentialLength the maximum number of characters
+     */
+    public void setMaxCredentialLength(int maxCredentialLength) {
+        this.maxCredentialLength = maxCredentialLength;
+    }
+
+    private JwtKey pin(JwtKey verificationKey) {
+        return verificationKey != null && algorithm != null ? verificationKey.withAlgorithm(algorithm) : verificationKey;
+    }
+
+    /**
+     * Verifies credentials with the key selected by their {@code kid} header,
+     * e.g. a {@link net.unit8.bouncr.sign.JwtKeyRegistry} for zero-downtime key rotation.
+     *
+     * @param keyResolver the key resolver
+     */
+    public void setKeyResolver(JwtKeyResolver keyResolver) {
+        this.keyResolver = keyResolver;
+        clearCache();
     }
 
     public void setJwt(JsonWebToken jwt) {
         this.jwt = jwt;
     }
+
+    /**
+     * Sets the receiver of cache hit and miss counts.
+     *
+     * @param metrics the metrics, or null to disable measurements
+     */
+    public void setMetrics(BouncrMetrics metrics) {
+        this.metrics = metrics != null ? metrics : BouncrMetrics.NOOP;
+    }
+
+    /**
+     * Sets the maximum number of verified credentials to cache.
+     * A value of zero or less disables the cache.
+     *
+     * @param cacheMaxSize the maximum number of cached credentials
+     */
+    public void setCacheMaxSize(int cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+        this.cache = createCache(cacheMaxSize, cacheTtl);
+    }
+
+    /**
+     * Sets how long a verified credential is cached.
+     * A credential is never cached beyond its {@code exp} claim.
+     *
+     * @param cacheTtl the time-to-live of a cache entry
+     */
+    public void setCacheTtl(Duration cacheTtl) {
+        this.cacheTtl = cacheTtl;
+        this.cache = createCache(cacheMaxSize, cacheTtl);
+    }
+
+    /**
+     * Sets the maximum number of rejected credentials to remember.
+     * A value of zero or less disables the negative cache.
+     *
+     * @param negativeCacheMaxSize the maximum number of remembered rejections
+     */
+    public void setNegativeCacheMaxSize(int negativeCacheMaxSize) {
+        this.negativeCacheMaxSize = negativeCacheMaxSize;
+        this.negativeCache = createCache(negativeCacheMaxSize, negativeCacheTtl);
+    }
+
+    /**
+     * Sets how long a rejected credential keeps being rejected without verification.
+     * Keep it short: a credential signed with a key that is not yet known
+     * stays rejected for this long after the key is added.
+     *
+     * @param negativeCacheTtl the time-to-live of a rejection
+     */
+    public void setNegativeCacheTtl(Duration negativeCacheTtl) {
+        this.negativeCacheTtl = negativeCacheTtl;
+        this.negativeCache = createCache(negativeCacheMaxSize, negativeCacheTtl);
+    }
+
+    /**
+     * @return the number of credentials rejected from the negative cache without verification
+     */
+    public long getNegativeCacheHitCount() {
+        CredentialCache<Boolean> negativeCache = this.negativeCache;
+        return negativeCache != null ? negativeCache.getHitCount() : 0L;
+    }
+
+    /**
+     * @return the number of rejections dropped from the negative cache because it was full
+     */
+    public long getNegativeCacheEvictionCount() {
+        CredentialCache<Boolean> negativeCache = this.negativeCache;
+        return negativeCache != null ? negativeCache.getEvictionCount() : 0L;
+    }
+
+    /**
+     * Sets how long a request waits for the verification of the same credential by another request.
+     * After that it verifies the credential itself. Defaults to one second.
+     * Zero or a negative value disables the sharing.
+     *
+     * @param singleFlightTimeout the maximum wait
+     */
+    public void setSingleFlightTimeout(Duration singleFlightTimeout) {
+        this.singleFlight = singleFlightTimeout.isZero() || singleFlightTimeout.isNegative()
+                ? null
+                : new SingleFlight<>(singleFlightTimeout.toNanos());
+    }
+
+    /**
+     * @return the number of requests that waited for the verification of their credential by another request
+     */
+    public long getCoalescedVerificationCount() {
+        SingleFlight<CredentialDigest, BouncrClaims.Payload> singleFlight = this.singleFlight;
+        return singleFlight != null ? singleFlight.getCoalescedCount() : 0L;
+    }
+
+    /**
+     * @return the number of requests that gave up waiting and verified their credential themselves
+     */
+    public long getSingleFlightTimeoutCount() {
+        SingleFlight<CredentialDigest, BouncrClaims.Payload> singleFlight = this.singleFlight;
+        return singleFlight != null ? singleFlight.getTimeoutCount() : 0L;
+    }
+
+    private static <V> CredentialCache<V> createCache(int maxSize, Duration ttl) {
+        if (maxSize <= 0 || ttl.isZero() || ttl.isNegative()) return null;
+        return new CredentialCache<>(maxSize, ttl.toMillis());
+    }
+
+    private void clearCache() {
+        if (cache != null) cache.clear();
+        if (negativeCache != null) negativeCache.clear();
+    }
 }
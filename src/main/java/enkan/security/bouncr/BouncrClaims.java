@@ -0,0 +1,293 @@
+package enkan.security.bouncr;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * The claims of a Bouncr credential as returned by {@link BouncrBackend#parse}.
+ *
+ * The payload is read once with a streaming parser that picks out {@code uid}, {@code sub},
+ * {@code permissions} and {@code exp}. Other claims stay as raw JSON and are decoded only
+ * when this map, or the profiles of the principal, are actually read.
+ * Each request gets its own mutable view over a shared payload.
+ */
+final class BouncrClaims extends AbstractMap<String, Object> {
+    private final Payload payload;
+    private Map<String, Object> map;
+
+    BouncrClaims(Payload payload) {
+        this.payload = payload;
+    }
+
+    Payload getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return true if the map has not been read or written, so the fields of the payload are current
+     */
+    boolean isUntouched() {
+        return map == null;
+    }
+
+    private Map<String, Object> delegate() {
+        if (map == null) map = new HashMap<>(payload.decode());
+        return map;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return delegate().entrySet();
+    }
+
+    @Override
+    public Object get(Object key) {
+        return delegate().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return delegate().containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return delegate().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return delegate().remove(key);
+    }
+
+    @Override
+    public int size() {
+        return delegate().size();
+    }
+
+    /**
+     * The verified payload of a credential. It is immutable and may be shared between requests.
+     */
+    static final class Payload {
+        private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+        private final ObjectMapper mapper;
+        private final byte[] json;
+        private final int offset;
+        private final int length;
+
+        private String uid;
+        private String sub;
+        private List<String> permissions = List.of();
+        private long expiresAt = Long.MAX_VALUE;
+        private long issuedAt = Long.MIN_VALUE;
+        /** False if a known claim has a shape that only the generic map conversion handles. */
+        private boolean regular = true;
+
+        private volatile Map<String, Object> decoded;
+
+        private Payload(ObjectMapper mapper, byte[] json, int offset, int length) {
+            this.mapper = mapper;
+            this.json = json;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * A {@link net.unit8.bouncr.sign.JwtPayloadReader} for Bouncr credentials.
+         *
+         * @return the payload, or null if the payload is JSON null
+         */
+        static Payload read(ObjectMapper mapper, byte[] json, int offset, int length) throws IOException {
+            Payload payload = new Payload(mapper, json, offset, length);
+            try (JsonParser parser = mapper.getFactory().createParser(json, offset, length)) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NULL) return null;
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "JWT payload is not a JSON object");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    switch (name) {
+                        case "uid" -> payload.uid = payload.text(parser, value, true);
+                        case "sub" -> payload.sub = payload.text(parser, value, false);
+                        case "permissions" -> payload.permissions = payload.readPermissions(parser, value);
+                        case "exp" -> payload.expiresAt = readEpochMillis(parser, value, Long.MAX_VALUE);
+                        case "iat" -> payload.issuedAt = readEpochMillis(parser, value, Long.MIN_VALUE);
+                        default -> parser.skipChildren();
+                    }
+                }
+            }
+            return payload;
+        }
+
+        private String text(JsonParser parser, JsonToken value, boolean allowNumber) throws IOException {
+            switch (value) {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_STRING:
+                    return parser.getText();
+                case VALUE_NUMBER_INT:
+                    if (allowNumber) return parser.getNumberValue().toString();
+                    // fall through
+                default:
+                    regular = false;
+                    parser.skipChildren();
+                    return null;
+            }
+        }
+
+        private List<String> readPermissions(JsonParser parser, JsonToken value) throws IOException {
+            if (value != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                return List.of();
+            }
+            List<String> names = new ArrayList<>();
+            JsonToken element;
+            while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                switch (element) {
+                    case VALUE_NULL -> { }
+                    case VALUE_STRING, VALUE_TRUE, VALUE_FALSE -> names.add(parser.getText());
+                    case VALUE_NUMBER_INT -> names.add(parser.getNumberValue().toString());
+                    default -> {
+                        regular = false;
+                        parser.skipChildren();
+                    }
+                }
+            }
+            return names;
+        }
+
+        /**
+         * @param otherwise the value for a claim that is not a number
+         */
+        private static long readEpochMillis(JsonParser parser, JsonToken value, long otherwise) throws IOException {
+            long seconds;
+            if (value == JsonToken.VALUE_NUMBER_INT) {
+                seconds = parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+                        ? (parser.getBigIntegerValue().signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE)
+                        : parser.getLongValue();
+            } else if (value == JsonToken.VALUE_NUMBER_FLOAT) {
+                seconds = (long) parser.getDoubleValue();
+            } else {
+                parser.skipChildren();
+                return otherwise;
+            }
+            if (seconds >= Long.MAX_VALUE / 1000L) return Long.MAX_VALUE;
+            if (seconds <= Long.MIN_VALUE / 1000L) return Long.MIN_VALUE;
+            return seconds * 1000L;
+        }
+
+        /**
+         * @return all claims as an unmodifiable map, decoded on first use
+         */
+        Map<String, Object> decode() {
+            Map<String, Object> claims = decoded;
+            if (claims == null) {
+                try {
+                    claims = Collections.unmodifiableMap(mapper.readValue(json, offset, length, MAP_TYPE));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                decoded = claims;
+            }
+            return claims;
+        }
+
+        String getUid() {
+            return uid;
+        }
+
+        String getSub() {
+            return sub;
+        }
+
+        List<String> getPermissions() {
+            return permissions;
+        }
+
+        /**
+         * @return the {@code exp} claim in epoch milliseconds, or {@link Long#MAX_VALUE} if absent
+         */
+        long getExpiresAt() {
+            return expiresAt;
+        }
+
+        /**
+         * @return the {@code iat} claim in epoch milliseconds, or {@link Long#MIN_VALUE} if absent
+         */
+        long getIssuedAt() {
+            return issuedAt;
+        }
+
+        boolean isRegular() {
+            return regular;
+        }
+    }
+
+    /**
+     * The claims other than {@code uid}, {@code sub} and {@code permissions}, decoded on first access.
+     */
+    static final class Profiles extends AbstractMap<String, Object> implements Serializable {
+        private final transient Payload payload;
+        private transient Map<String, Object> map;
+
+        Profiles(Payload payload) {
+            this.payload = payload;
+        }
+
+        private Map<String, Object> delegate() {
+            if (map == null) {
+                Map<String, Object> profiles = new HashMap<>(payload.decode());
+                profiles.remove("uid");
+                profiles.remove("sub");
+                profiles.remove("permissions");
+                map = profiles;
+            }
+            return map;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return delegate().entrySet();
+        }
+
+        @Override
+        public Object get(Object key) {
+            return delegate().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return delegate().containsKey(key);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return delegate().put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return delegate().remove(key);
+        }
+
+        @Override
+        public int size() {
+            return delegate().size();
+        }
+
+        private Object writeReplace() {
+            return new HashMap<>(delegate());
+        }
+    }
+}
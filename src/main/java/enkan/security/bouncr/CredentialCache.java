@@ -0,0 +1,117 @@
+package enkan.security.bouncr;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache with a time-to-live, keyed by {@link CredentialDigest}.
+ *
+ * Reads are lock-free. When the cache is full, the oldest insertion is evicted first.
+ * The insertion order holds the entries themselves, so an entry that expired or was replaced
+ * leaves no slot behind that could evict a later entry for the same key.
+ *
+ * @param <V> the type of cached values
+ */
+class CredentialCache<V> {
+    private final ConcurrentHashMap<CredentialDigest, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry<V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    CredentialCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    V get(CredentialDigest key, long now) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt <= now) {
+            if (entries.remove(key, entry)) dequeue(entry);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Caches the value until the earlier of the TTL and the given expiry.
+     *
+     * @param key       the digest of the credential
+     * @param value     the value to cache
+     * @param expiresAt the epoch millis at which the value becomes invalid, or {@code Long.MAX_VALUE}
+     * @param now       the current epoch millis
+     */
+    void put(CredentialDigest key, V value, long expiresAt, long now) {
+        long until = Math.min(expiresAt, now + ttlMillis);
+        if (until <= now) return;
+        Entry<V> entry = new Entry<>(key, value, until);
+        Entry<V> replaced = entries.put(key, entry);
+        if (replaced != null) dequeue(replaced);
+        insertionOrder.offer(entry);
+        queued.incrementAndGet();
+        while (queued.get() > maxSize) {
+            Entry<V> eldest = insertionOrder.poll();
+            if (eldest == null) break;
+            queued.decrementAndGet();
+            if (entries.remove(eldest.key, eldest)) evictions.increment();
+        }
+    }
+
+    /**
+     * Frees the insertion slot of an entry that has left the map. This scans the queue,
+     * but it happens once per expired or replaced entry, not per read.
+     */
+    private void dequeue(Entry<V> entry) {
+        if (insertionOrder.remove(entry)) queued.decrementAndGet();
+    }
+
+    void clear() {
+        entries.clear();
+        insertionOrder.clear();
+        queued.set(0);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries removed to make room for new ones
+     */
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static final class Entry<V> {
+        private final CredentialDigest key;
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(CredentialDigest key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
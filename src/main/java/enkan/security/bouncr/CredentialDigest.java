@@ -0,0 +1,44 @@
+package enkan.security.bouncr;
+
+import enkan.exception.UnreachableException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * SHA-256 digest of a raw credential string.
+ *
+ * Used as a cache key so that caches never retain the credential itself.
+ */
+final class CredentialDigest {
+    private final byte[] value;
+    private final int hash;
+
+    private CredentialDigest(byte[] value) {
+        this.value = value;
+        this.hash = Arrays.hashCode(value);
+    }
+
+    static CredentialDigest of(String credential) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return new CredentialDigest(md.digest(credential.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnreachableException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return MessageDigest.isEqual(value, ((CredentialDigest) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
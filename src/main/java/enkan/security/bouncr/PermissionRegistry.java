@@ -0,0 +1,75 @@
+package enkan.security.bouncr;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns permission names to small integer ids, so that a set of permissions
+ * can be held as a bitset.
+ *
+ * Ids are assigned on first sight and never reused. The registry stops assigning ids
+ * once it holds {@code maxSize} names; permissions beyond that are kept by name.
+ */
+public final class PermissionRegistry {
+    private static final PermissionRegistry DEFAULT = new PermissionRegistry(4096);
+
+    private final int maxSize;
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    /**
+     * @param maxSize the maximum number of permission names to intern
+     */
+    public PermissionRegistry(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the registry shared by all backends and used when a permission set is deserialized
+     */
+    public static PermissionRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the id of the permission, or -1 if it has not been interned
+     */
+    int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @return the id of the permission, or -1 if the registry is full
+     */
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) return id;
+            if (size >= maxSize) return -1;
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, Math.min(current.length * 2, maxSize));
+            }
+            current[size] = name;
+            // Publish the name before its id becomes visible.
+            names = current;
+            ids.put(name, size);
+            return size++;
+        }
+    }
+
+    String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return the number of interned permission names
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,163 @@
+package enkan.security.bouncr;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * An immutable set of permission names backed by a bitset of interned ids.
+ *
+ * Membership tests cost one hash lookup and a bit test, and checks against another
+ * set from the same registry are plain bit operations.
+ * A permission set is serialized by name and deserialized into the default registry.
+ */
+public final class PermissionSet extends AbstractSet<String> implements Serializable {
+    private static final long[] EMPTY = new long[0];
+
+    private final transient PermissionRegistry registry;
+    private final transient long[] bits;
+    /** Permissions that could not be interned because the registry was full. */
+    private final transient Set<String> overflow;
+    private final transient int size;
+
+    private PermissionSet(PermissionRegistry registry, long[] bits, Set<String> overflow) {
+        this.registry = registry;
+        this.bits = bits;
+        this.overflow = overflow;
+        int n = overflow.size();
+        for (long word : bits) n += Long.bitCount(word);
+        this.size = n;
+    }
+
+    /**
+     * Creates a permission set. Null elements are ignored and other elements are
+     * converted with {@link Object#toString()}.
+     *
+     * @param registry the registry that interns the names
+     * @param permissions the permission names
+     * @return a permission set
+     */
+    public static PermissionSet of(PermissionRegistry registry, Collection<?> permissions) {
+        long[] bits = EMPTY;
+        Set<String> overflow = Set.of();
+        for (Object permission : permissions) {
+            if (permission == null) continue;
+            String name = permission.toString();
+            int id = registry.intern(name);
+            if (id < 0) {
+                if (overflow.isEmpty()) overflow = new HashSet<>();
+                overflow.add(name);
+                continue;
+            }
+            int word = id >>> 6;
+            if (word >= bits.length) bits = Arrays.copyOf(bits, word + 1);
+            bits[word] |= 1L << id;
+        }
+        return new PermissionSet(registry, bits, overflow);
+    }
+
+    /**
+     * Creates a permission set in the default registry.
+     *
+     * @param permissions the permission names
+     * @return a permission set
+     */
+    public static PermissionSet of(String... permissions) {
+        return of(PermissionRegistry.getDefault(), Arrays.asList(permissions));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String name)) return false;
+        int id = registry.idOf(name);
+        if (id >= 0) return hasBit(id);
+        return !overflow.isEmpty() && overflow.contains(name);
+    }
+
+    private boolean hasBit(int id) {
+        int word = id >>> 6;
+        return word < bits.length && (bits[word] & (1L << id)) != 0;
+    }
+
+    /**
+     * @return true if this set contains at least one of the permissions
+     */
+    public boolean containsAny(PermissionSet other) {
+        if (other.registry != registry || !other.overflow.isEmpty()) {
+            for (String permission : other) {
+                if (contains(permission)) return true;
+            }
+            return false;
+        }
+        int n = Math.min(bits.length, other.bits.length);
+        for (int i = 0; i < n; i++) {
+            if ((bits[i] & other.bits[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if this set contains all of the permissions
+     */
+    public boolean containsAll(PermissionSet other) {
+        if (other.registry != registry || !other.overflow.isEmpty()) {
+            return super.containsAll(other);
+        }
+        for (int i = 0; i < other.bits.length; i++) {
+            long word = i < bits.length ? bits[i] : 0L;
+            if ((other.bits[i] & ~word) != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private int word = 0;
+            private long remaining = bits.length > 0 ? bits[0] : 0L;
+            private Iterator<String> overflowIterator;
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && word + 1 < bits.length) {
+                    remaining = bits[++word];
+                }
+                if (remaining != 0) return true;
+                if (overflowIterator == null) overflowIterator = overflow.iterator();
+                return overflowIterator.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                if (remaining != 0) {
+                    int bit = Long.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                    return registry.nameOf(word * 64 + bit);
+                }
+                return overflowIterator.next();
+            }
+        };
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(toArray(new String[0]));
+    }
+
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String[] names;
+
+        private SerializedForm(String[] names) {
+            this.names = names;
+        }
+
+        private Object readResolve() {
+            return PermissionSet.of(names);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package enkan.security.bouncr;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most one computation per key at a time. Callers that arrive while the computation
+ * is running wait for its result instead of repeating it.
+ *
+ * A caller waits for a bounded time only. After that it runs the computation itself,
+ * so a stuck computation cannot hold up every request with the same key.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of results
+ */
+class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    SingleFlight(long timeoutNanos) {
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    V run(K key, Supplier<V> computation) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = flights.putIfAbsent(key, flight);
+        if (running == null) {
+            try {
+                V value = computation.get();
+                flight.complete(value);
+                return value;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                flights.remove(key, flight);
+            }
+        }
+
+        coalesced.increment();
+        try {
+            return running.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            return computation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return computation.get();
+        } catch (ExecutionException e) {
+            // The computation is a Supplier, so it fails only with unchecked exceptions.
+            if (e.getCause() instanceof Error error) throw error;
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * @return the number of callers that waited for a computation started by another caller
+     */
+    long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of callers that gave up waiting and ran the computation themselves
+     */
+    long getTimeoutCount() {
+        return timeouts.sum();
+    }
+}
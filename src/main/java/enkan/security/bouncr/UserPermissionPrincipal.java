@@ -3,6 +3,7 @@ package enkan.security.bouncr;
 import enkan.security.UserPrincipal;
 
 import java.io.Serializable;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,7 +34,57 @@ public class UserPermissionPrincipal implements Serializable, UserPrincipal {
         return permissions.contains(permission);
     }
 
+    /**
+     * @return true if the user has at least one of the permissions
+     */
+    public boolean hasAnyPermission(String... permissions) {
+        for (String permission : permissions) {
+            if (this.permissions.contains(permission)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the user has every one of the permissions
+     */
+    public boolean hasAllPermissions(String... permissions) {
+        for (String permission : permissions) {
+            if (!this.permissions.contains(permission)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the permissions with bit operations when the user's permissions are a {@link PermissionSet}.
+     *
+     * @return true if the user has at least one of the permissions
+     */
+    public boolean hasAnyPermission(PermissionSet permissions) {
+        if (this.permissions instanceof PermissionSet own) return own.containsAny(permissions);
+        for (String permission : permissions) {
+            if (this.permissions.contains(permission)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks the permissions with bit operations when the user's permissions are a {@link PermissionSet}.
+     *
+     * @return true if the user has every one of the permissions
+     */
+    public boolean hasAllPermissions(PermissionSet permissions) {
+        if (this.permissions instanceof PermissionSet own) return own.containsAll(permissions);
+        return this.permissions.containsAll(permissions);
+    }
+
+    /**
+     * Returns the permissions. When they are held as a {@link PermissionSet}, which is immutable,
+     * a mutable copy is returned, so changes to it do not affect this principal.
+     *
+     * @return the permissions
+     */
     public Set<String> getPermissions() {
+        if (permissions instanceof PermissionSet) return new HashSet<>(permissions);
         return permissions;
     }
 
@@ -0,0 +1,92 @@
+package net.unit8.bouncr.sign;
+
+import java.util.Arrays;
+
+/**
+ * Base64url decoding over a range of a byte array.
+ *
+ * Unlike {@link java.util.Base64.Decoder}, it can decode a segment of a token without
+ * copying it first, and it can decode in place because the output never overtakes the input.
+ */
+final class Base64Url {
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private Base64Url() {
+    }
+
+    /**
+     * Decodes {@code src[from, to)} into {@code dst} starting at {@code dstOff}.
+     * Decoding in place is allowed as long as {@code dstOff <= from}.
+     *
+     * @return the number of decoded bytes, or -1 if the input is not valid base64url
+     */
+    static int decode(byte[] src, int from, int to, byte[] dst, int dstOff) {
+        int end = to;
+        if (end > from && src[end - 1] == '=') end--;
+        if (end > from && src[end - 1] == '=') end--;
+        int remainder = (end - from) % 4;
+        if (remainder == 1) return -1;
+        if (end != to && ((to - from) % 4 != 0)) return -1;
+
+        int out = dstOff;
+        int in = from;
+        int fullEnd = end - remainder;
+        while (in < fullEnd) {
+            int b0 = value(src[in]), b1 = value(src[in + 1]), b2 = value(src[in + 2]), b3 = value(src[in + 3]);
+            if ((b0 | b1 | b2 | b3) < 0) return -1;
+            int bits = b0 << 18 | b1 << 12 | b2 << 6 | b3;
+            dst[out] = (byte) (bits >> 16);
+            dst[out + 1] = (byte) (bits >> 8);
+            dst[out + 2] = (byte) bits;
+            in += 4;
+            out += 3;
+        }
+        if (remainder == 2) {
+            int b0 = value(src[in]), b1 = value(src[in + 1]);
+            if ((b0 | b1) < 0 || (b1 & 0x0f) != 0) return -1;
+            dst[out++] = (byte) (b0 << 2 | b1 >> 4);
+        } else if (remainder == 3) {
+            int b0 = value(src[in]), b1 = value(src[in + 1]), b2 = value(src[in + 2]);
+            if ((b0 | b1 | b2) < 0 || (b2 & 0x03) != 0) return -1;
+            int bits = b0 << 12 | b1 << 6 | b2;
+            dst[out++] = (byte) (bits >> 10);
+            dst[out++] = (byte) (bits >> 2);
+        }
+        return out - dstOff;
+    }
+
+    /**
+     * Decodes {@code src[from, to)} into a new array.
+     *
+     * @throws IllegalArgumentException if the input is not valid base64url
+     */
+    static byte[] decode(byte[] src, int from, int to) {
+        byte[] dst = new byte[maxDecodedLength(to - from)];
+        int len = decode(src, from, to, dst, 0);
+        if (len < 0) throw new IllegalArgumentException("Illegal base64url character or length");
+        return len == dst.length ? dst : Arrays.copyOf(dst, len);
+    }
+
+    /**
+     * @return true if the character is in the base64url alphabet, padding excluded
+     */
+    static boolean isAlphabet(char c) {
+        return c < 128 && DECODE[c] >= 0;
+    }
+
+    static int maxDecodedLength(int encodedLength) {
+        return encodedLength / 4 * 3 + Math.max(encodedLength % 4 - 1, 0);
+    }
+
+    private static int value(byte b) {
+        return b < 0 ? -1 : DECODE[b];
+    }
+}
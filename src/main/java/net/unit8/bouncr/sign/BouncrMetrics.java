@@ -0,0 +1,53 @@
+package net.unit8.bouncr.sign;
+
+import java.lang.reflect.Method;
+
+/**
+ * Receives measurements from {@link JsonWebToken}, {@code BouncrBackend} and
+ * {@code AuthorizeControllerMethodMiddleware}.
+ *
+ * Implement it to bridge to a metrics library such as Micrometer. Every method has an empty
+ * default, and nothing is measured while {@link #NOOP} is set, which is the default.
+ * To supply it from an enkan system, register a {@link enkan.component.SystemComponent}
+ * that implements this interface; it is injected into the fields annotated with {@code @Inject}.
+ * Implementations are called on request threads and must be thread-safe.
+ */
+public interface BouncrMetrics {
+    /** Records nothing. */
+    BouncrMetrics NOOP = new BouncrMetrics() {};
+
+    /** The name of the cache of verified credentials. */
+    String CREDENTIAL_CACHE = "credential";
+    /** The name of the cache of rejected credentials. */
+    String NEGATIVE_CACHE = "negative";
+
+    /**
+     * @param alg the JWS algorithm
+     * @param nanos the time spent computing the signature
+     */
+    default void recordSign(String alg, long nanos) {
+    }
+
+    /**
+     * @param alg the JWS algorithm
+     * @param nanos the time spent checking the signature
+     */
+    default void recordVerify(String alg, long nanos) {
+    }
+
+    default void recordVerificationFailure(VerificationFailure reason) {
+    }
+
+    /**
+     * @param cache {@link #CREDENTIAL_CACHE} or {@link #NEGATIVE_CACHE}
+     * @param hit true if the credential was found in the cache
+     */
+    default void recordCacheAccess(String cache, boolean hit) {
+    }
+
+    /**
+     * @param controllerMethod the controller method the request was denied
+     */
+    default void recordDenial(Method controllerMethod) {
+    }
+}
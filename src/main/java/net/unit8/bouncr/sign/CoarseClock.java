@@ -0,0 +1,44 @@
+package net.unit8.bouncr.sign;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The current time in epoch seconds, refreshed by a daemon thread while it is running.
+ *
+ * Reading it is a volatile read, so validating the time claims of a token neither
+ * calls the system clock nor allocates. It can lag the system clock by a tick interval or more,
+ * so callers must not reject a time as being in the future on its word alone.
+ */
+final class CoarseClock {
+    private static final long TICK_MILLIS = 100L;
+
+    private volatile long epochSeconds = System.currentTimeMillis() / 1000L;
+    private final ScheduledExecutorService ticker;
+
+    private CoarseClock() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bouncr-coarse-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> epochSeconds = System.currentTimeMillis() / 1000L,
+                TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a clock. Stop it with {@link #stop()}.
+     */
+    static CoarseClock start() {
+        return new CoarseClock();
+    }
+
+    long epochSeconds() {
+        return epochSeconds;
+    }
+
+    void stop() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,220 @@
+package net.unit8.bouncr.sign;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Signature;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, lock-free pool of JCA engines.
+ *
+ * Initialized {@link Mac} instances are pooled per algorithm and key, and {@link Signature}
+ * instances are pooled per algorithm. The pool holds no thread-local state, so it works
+ * the same for platform threads and virtual threads.
+ */
+public class CryptoEnginePool {
+    private static final String PROVIDER = "BC";
+    private static final int MAX_MAC_KEYS = 64;
+
+    private final int maxIdlePerKey;
+    private final ConcurrentHashMap<MacKey, Slots<PooledMac>> macs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Slots<Signature>> signatures = new ConcurrentHashMap<>();
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    /**
+     * @param maxIdlePerKey the maximum number of idle engines kept for each algorithm (and key)
+     */
+    public CryptoEnginePool(int maxIdlePerKey) {
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    PooledMac borrowMac(String algorithm, SecretKey key) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+        Slots<PooledMac> slots = macSlots(algorithm, key);
+        PooledMac pooled = slots == null ? null : slots.poll();
+        if (pooled != null) {
+            reused.increment();
+            return pooled;
+        }
+        Mac mac = Mac.getInstance(algorithm, PROVIDER);
+        mac.init(key);
+        created.increment();
+        return new PooledMac(mac);
+    }
+
+    void returnMac(String algorithm, SecretKey key, PooledMac pooled) {
+        pooled.mac.reset();
+        Slots<PooledMac> slots = macSlots(algorithm, key);
+        if (slots == null || !slots.offer(pooled)) {
+            discarded.increment();
+        }
+    }
+
+    /**
+     * Borrows a signature engine. The caller must initialize it for signing or verification.
+     */
+    Signature borrowSignature(String algorithm) throws NoSuchAlgorithmException, NoSuchProviderException {
+        Signature signature = signatureSlots(algorithm).poll();
+        if (signature != null) {
+            reused.increment();
+            return signature;
+        }
+        created.increment();
+        return Signature.getInstance(algorithm, PROVIDER);
+    }
+
+    void returnSignature(String algorithm, Signature signature) {
+        if (!signatureSlots(algorithm).offer(signature)) {
+            discarded.increment();
+        }
+    }
+
+    private Slots<PooledMac> macSlots(String algorithm, SecretKey key) {
+        MacKey macKey = new MacKey(algorithm, key);
+        Slots<PooledMac> slots = macs.get(macKey);
+        if (slots == null && macs.size() < MAX_MAC_KEYS) {
+            slots = macs.computeIfAbsent(macKey, k -> new Slots<>(maxIdlePerKey));
+        }
+        return slots;
+    }
+
+    private Slots<Signature> signatureSlots(String algorithm) {
+        return signatures.computeIfAbsent(algorithm, k -> new Slots<>(maxIdlePerKey));
+    }
+
+    /**
+     * @return the number of engines created because no idle engine was available
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /**
+     * @return the number of times an idle engine was reused
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     * @return the number of engines dropped because the pool was full
+     */
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    /**
+     * @return the number of engines currently idle in the pool
+     */
+    public int getIdleCount() {
+        int idle = 0;
+        for (Slots<PooledMac> slots : macs.values()) idle += slots.count();
+        for (Slots<Signature> slots : signatures.values()) idle += slots.count();
+        return idle;
+    }
+
+    public int getMaxIdlePerKey() {
+        return maxIdlePerKey;
+    }
+
+    void clear() {
+        macs.clear();
+        signatures.clear();
+    }
+
+    /**
+     * An initialized Mac with preallocated buffers for the computed and the presented MAC,
+     * so that verification needs no allocation.
+     */
+    static final class PooledMac {
+        final Mac mac;
+        final byte[] computed;
+        final byte[] presented;
+
+        private PooledMac(Mac mac) {
+            this.mac = mac;
+            this.computed = new byte[mac.getMacLength()];
+            this.presented = new byte[mac.getMacLength()];
+        }
+    }
+
+    private static final class MacKey {
+        private final String algorithm;
+        private final SecretKey key;
+
+        private MacKey(String algorithm, SecretKey key) {
+            this.algorithm = algorithm;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MacKey macKey = (MacKey) o;
+            return algorithm.equals(macKey.algorithm) && key.equals(macKey.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(algorithm, key);
+        }
+    }
+
+    /**
+     * Fixed-size slots claimed with CAS. Each thread starts probing at a slot derived from
+     * its id, which spreads concurrent borrowers over different slots.
+     */
+    private static final class Slots<E> {
+        private final AtomicReferenceArray<E> slots;
+
+        private Slots(int size) {
+            this.slots = new AtomicReferenceArray<>(Math.max(size, 0));
+        }
+
+        E poll() {
+            int n = slots.length();
+            int start = start(n);
+            for (int i = 0; i < n; i++) {
+                int idx = (start + i) % n;
+                if (slots.get(idx) != null) {
+                    E engine = slots.getAndSet(idx, null);
+                    if (engine != null) return engine;
+                }
+            }
+            return null;
+        }
+
+        boolean offer(E engine) {
+            int n = slots.length();
+            int start = start(n);
+            for (int i = 0; i < n; i++) {
+                int idx = (start + i) % n;
+                if (slots.get(idx) == null && slots.compareAndSet(idx, null, engine)) return true;
+            }
+            return false;
+        }
+
+        int count() {
+            int count = 0;
+            for (int i = 0; i < slots.length(); i++) {
+                if (slots.get(i) != null) count++;
+            }
+            return count;
+        }
+
+        private static int start(int n) {
+            if (n == 0) return 0;
+            long id = Thread.currentThread().threadId();
+            return (int) ((id ^ (id >>> 32)) & Integer.MAX_VALUE) % n;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package net.unit8.bouncr.sign;
+
+import java.util.concurrent.*;
+
+/**
+ * The default executor of the async methods of {@link JsonWebToken}.
+ *
+ * Tasks run on a pool of platform threads sized to the cores, or on virtual threads.
+ * Either way at most {@code capacity} tasks are queued or running at a time, and any more
+ * are rejected instead of queued, so that a burst of requests cannot pile up in memory.
+ */
+final class CryptoExecutor implements Executor {
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+
+    private CryptoExecutor(ExecutorService delegate, int capacity) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(capacity);
+    }
+
+    static CryptoExecutor platform(int threads, int capacity) {
+        ThreadFactory factory = Thread.ofPlatform().name("bouncr-crypto-", 0).daemon().factory();
+        return new CryptoExecutor(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), factory), capacity);
+    }
+
+    static CryptoExecutor virtual(int capacity) {
+        ThreadFactory factory = Thread.ofVirtual().name("bouncr-crypto-", 0).factory();
+        return new CryptoExecutor(Executors.newThreadPerTaskExecutor(factory), capacity);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("Too many pending crypto tasks");
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of tasks that can still be accepted
+     */
+    int availableCapacity() {
+        return permits.availablePermits();
+    }
+
+    void shutdown() {
+        delegate.shutdown();
+    }
+}
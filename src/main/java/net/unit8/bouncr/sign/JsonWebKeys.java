@@ -0,0 +1,119 @@
+package net.unit8.bouncr.sign;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enkan.exception.UnreachableException;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.*;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses a JSON Web Key Set (RFC 7517) into verification keys keyed by {@code kid}.
+ *
+ * Supports RSA, EC (P-256, P-384, P-521), OKP (Ed25519, Ed448) and oct keys.
+ * Keys whose {@code use} is not {@code sig} are skipped.
+ */
+final class JsonWebKeys {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final byte[] ED25519_PREFIX = {0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00};
+    private static final byte[] ED448_PREFIX = {0x30, 0x43, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x71, 0x03, 0x3a, 0x00};
+
+    private JsonWebKeys() {
+    }
+
+    /**
+     * @param jwks the JWKS document
+     * @return an immutable map from kid to key. A key without kid is mapped to the empty string.
+     * @throws IOException if the document is not a valid JWKS
+     */
+    static Map<String, JwtKey> parse(byte[] jwks) throws IOException {
+        JsonNode keys = MAPPER.readTree(jwks).path("keys");
+        if (!keys.isArray()) throw new IOException("JWKS has no 'keys' array");
+
+        Map<String, JwtKey> result = new HashMap<>();
+        for (JsonNode jwk : keys) {
+            String use = jwk.path("use").asText("sig");
+            if (!use.equals("sig")) continue;
+            JwtKey key = toKey(jwk);
+            String alg = jwk.path("alg").asText(null);
+            if (alg != null) key = key.withAlgorithm(alg);
+            result.put(jwk.path("kid").asText(""), key);
+        }
+        return Map.copyOf(result);
+    }
+
+    private static JwtKey toKey(JsonNode jwk) throws IOException {
+        String kty = jwk.path("kty").asText();
+        try {
+            switch (kty) {
+                case "RSA":
+                    return JwtKey.of(KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                            integer(jwk, "n"), integer(jwk, "e"))));
+                case "EC":
+                    return JwtKey.of(ecPublicKey(jwk));
+                case "OKP":
+                    return JwtKey.of(okpPublicKey(jwk));
+                case "oct":
+                    return JwtKey.hmac(bytes(jwk, "k"));
+                default:
+                    throw new IOException("Unsupported JWK key type: " + kty);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnreachableException(e);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Invalid JWK (kid=" + jwk.path("kid").asText() + ")", e);
+        }
+    }
+
+    private static PublicKey ecPublicKey(JsonNode jwk) throws IOException, GeneralSecurityException {
+        String crv = jwk.path("crv").asText();
+        String curve;
+        switch (crv) {
+            case "P-256": curve = "secp256r1"; break;
+            case "P-384": curve = "secp384r1"; break;
+            case "P-521": curve = "secp521r1"; break;
+            default: throw new IOException("Unsupported EC curve: " + crv);
+        }
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec(curve));
+        ECPoint point = new ECPoint(integer(jwk, "x"), integer(jwk, "y"));
+        return KeyFactory.getInstance("EC").generatePublic(
+                new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+    }
+
+    private static PublicKey okpPublicKey(JsonNode jwk) throws IOException, GeneralSecurityException {
+        String crv = jwk.path("crv").asText();
+        byte[] prefix;
+        switch (crv) {
+            case "Ed25519": prefix = ED25519_PREFIX; break;
+            case "Ed448": prefix = ED448_PREFIX; break;
+            default: throw new IOException("Unsupported OKP curve: " + crv);
+        }
+        byte[] x = bytes(jwk, "x");
+        byte[] encoded = new byte[prefix.length + x.length];
+        System.arraycopy(prefix, 0, encoded, 0, prefix.length);
+        System.arraycopy(x, 0, encoded, prefix.length, x.length);
+        return KeyFactory.getInstance("EdDSA").generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
+    private static BigInteger integer(JsonNode jwk, String name) throws IOException {
+        return new BigInteger(1, bytes(jwk, name));
+    }
+
+    private static byte[] bytes(JsonNode jwk, String name) throws IOException {
+        JsonNode value = jwk.get(name);
+        if (value == null || !value.isTextual()) throw new IOException("JWK has no '" + name + "' member");
+        return DECODER.decode(value.asText());
+    }
+}
@@ -1,7 +1,10 @@
 package net.unit8.bouncr.sign;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -11,18 +14,29 @@ import enkan.component.SystemComponent;
 import enkan.exception.MisconfigurationException;
 import enkan.exception.UnreachableException;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import jakarta.inject.Inject;
+import javax.crypto.ShortBufferException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
-import java.util.Map;
-import java.util.Objects;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static enkan.util.ThreadingUtils.some;
 
@@ -31,6 +45,36 @@ public class JsonWebToken extends SystemComponent<JsonWebToken> {
     private Base64.Decoder base64Decoder;
     private Base64.Encoder base64Encoder;
     private SecureRandom prng;
+    private int prngStripes = 2 * Runtime.getRuntime().availableProcessors();
+    private SecureRandomStripes randomStripes;
+    private CryptoEnginePool enginePool;
+    private int enginePoolSize = Runtime.getRuntime().availableProcessors();
+    private Map<HeaderKey, String> encodedHeaders = new ConcurrentHashMap<>();
+    private int headerCacheSize = 64;
+    /**
+     * Parsed header segments, indexed by a hash of the segment. A token fleet has only a few
+     * distinct headers, so most tokens skip the header JSON parsing. Entries are immutable,
+     * so a racy write only costs a parse. A header is stored only once a token carrying it has
+     * a valid signature, so headers of forged tokens cannot evict the fleet's headers.
+     */
+    private final ParsedHeader[] parsedHeaders = new ParsedHeader[16];
+
+    private boolean validateTimestamps = true;
+    private long clockSkewSeconds = 0L;
+    private long maxAgeSeconds = -1L;
+    private Clock clock;
+    private CoarseClock coarseClock;
+    private Executor signingExecutor;
+    private Executor asyncExecutor;
+    private boolean asyncVirtualThreads = false;
+    private int asyncCapacity = 1024;
+    private CryptoExecutor cryptoExecutor;
+
+    @Inject
+    private BouncrMetrics metrics = BouncrMetrics.NOOP;
+
+    /** Returned by {@link #numericDate} for a claim that is not a number. */
+    private static final long NOT_A_DATE = Long.MIN_VALUE;
 
     private static final OptionMap ALGORITHMS = OptionMap.of(
             "HS256", "HmacSHA256",
@@ -42,10 +86,100 @@ public class JsonWebToken extends SystemComponent<JsonWebToken> {
             "PS256", "SHA256withRSAandMGF1",
             "PS384", "SHA384withRSAandMGF1",
             "PS512", "SHA512withRSAandMGF1",
+            "ES256", "SHA256withPLAIN-ECDSA",
+            "ES384", "SHA384withPLAIN-ECDSA",
+            "ES512", "SHA512withPLAIN-ECDSA",
+            "EdDSA", "EdDSA",
+            "Ed25519", "Ed25519",
             "none",  "none"
             );
 
+    /**
+     * A header segment of a token whose signature has verified, with its parsed form and signature algorithm.
+     */
+    private static final class ParsedHeader {
+        private final byte[] encoded;
+        private final String alg;
+        private final String kid;
+        private final String signAlgorithm;
+
+        ParsedHeader(byte[] bytes, int length, JwtHeader header, String signAlgorithm) {
+            this.encoded = Arrays.copyOf(bytes, length);
+            this.alg = header.getAlg();
+            this.kid = header.getKid();
+            this.signAlgorithm = signAlgorithm;
+        }
+
+        static int slot(byte[] bytes, int length, int slots) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            return (hash ^ (hash >>> 16)) & (slots - 1);
+        }
+
+        /**
+         * The same slot as {@link #slot(byte[], int, int)} for the ASCII bytes of the message.
+         */
+        static int slot(String message, int length, int slots) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + (byte) message.charAt(i);
+            }
+            return (hash ^ (hash >>> 16)) & (slots - 1);
+        }
+
+        boolean matches(byte[] bytes, int length) {
+            return Arrays.equals(encoded, 0, encoded.length, bytes, 0, length);
+        }
+
+        boolean matches(String message, int length) {
+            if (encoded.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (encoded[i] != message.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return a new header, because JwtHeader is mutable and reaches the caller
+         */
+        JwtHeader toHeader() {
+            JwtHeader header = new JwtHeader();
+            header.setAlg(alg);
+            header.setKid(kid);
+            return header;
+        }
+    }
+
+    /**
+     * The fields that determine the encoding of a plain {@link JwtHeader}.
+     * JwtHeader itself is mutable, so it cannot be a key of the cache.
+     */
+    private record HeaderKey(String alg, String kid) {
+    }
+
+    /**
+     * Encodes a header, reusing the encoding of an equal header signed before.
+     */
     private String encodeHeader(JwtHeader header) {
+        if (header == null || header.getClass() != JwtHeader.class) {
+            return serializeHeader(header);
+        }
+        HeaderKey key = new HeaderKey(header.getAlg(), header.getKid());
+        String encoded = encodedHeaders.get(key);
+        if (encoded == null) {
+            encoded = serializeHeader(header);
+            if (encoded != null && headerCacheSize > 0) {
+                // Headers are few in practice; a full cache means they are not, so start over.
+                if (encodedHeaders.size() >= headerCacheSize) encodedHeaders.clear();
+                encodedHeaders.put(key, encoded);
+            }
+        }
+        return encoded;
+    }
+
+    private String serializeHeader(JwtHeader header) {
         return some(header,
                 h -> mapper.writeValueAsBytes(h),
                 json -> base64Encoder.encodeToString(json))
@@ -54,56 +188,474 @@ public class JsonWebToken extends SystemComponent<JsonWebToken> {
 
     public <T> T decodePayload(String encoded, TypeReference<T> payloadType) {
         return some(encoded,
-                enc -> new String(base64Decoder.decode(enc)),
-                plain -> (T) mapper.readValue(plain, payloadType))
+                enc -> base64Decoder.decode(enc),
+                json -> mapper.readValue(json, payloadType))
                 .orElse(null);
     }
 
-    private boolean verifySignature(String alg, String signature, byte[] key, String header, String payload) {
+    private String signAlgorithm(String alg) {
         String signAlgorithm = ALGORITHMS.getString(alg);
         if (signAlgorithm == null) throw new MisconfigurationException("bouncr.NO_SUCH_JWT_ALGORITHM", alg);
-        if (signAlgorithm.equals("none")) {
-            throw new MisconfigurationException("bouncr.ALG_NONE_NOT_ALLOWED");
+        return signAlgorithm;
+    }
+
+    /**
+     * Returns the KeyFactory algorithm for the key type that the signature algorithm requires.
+     */
+    private static String keyAlgorithm(String signAlgorithm) {
+        if (signAlgorithm.contains("RSA")) return "RSA";
+        if (signAlgorithm.contains("ECDSA")) return "EC";
+        return "EdDSA";
+    }
+
+    private JwtKey decodeVerificationKey(String signAlgorithm, byte[] key) {
+        if (signAlgorithm.startsWith("Hmac")) {
+            return JwtKey.hmac(key);
+        }
+        try {
+            KeyFactory kf = KeyFactory.getInstance(keyAlgorithm(signAlgorithm));
+            return JwtKey.of(kf.generatePublic(new X509EncodedKeySpec(key)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnreachableException(e);
+        } catch (InvalidKeySpecException e) {
+            return null;
+        }
+    }
+
+    private JwtKey decodeSigningKey(String signAlgorithm, byte[] key) {
+        if (signAlgorithm.startsWith("Hmac")) {
+            return JwtKey.hmac(key);
+        }
+        try {
+            KeyFactory kf = KeyFactory.getInstance(keyAlgorithm(signAlgorithm));
+            return JwtKey.of(kf.generatePrivate(new PKCS8EncodedKeySpec(key)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnreachableException(e);
+        } catch (InvalidKeySpecException e) {
+            throw new MisconfigurationException("bouncr.INVALID_SIGNING_KEY",
+                    "The private key is invalid or incompatible with the signing algorithm.");
         }
+    }
 
+    private boolean verifySignature(String signAlgorithm, JwtKey key, TokenSegments segments) {
+        if (key == null) return false;
+        byte[] token = segments.bytes;
         try {
             if (signAlgorithm.startsWith("Hmac")) {
-                SecretKeySpec keySpec = new SecretKeySpec(key, signAlgorithm);
-                Mac mac = Mac.getInstance(signAlgorithm, "BC");
-                mac.init(keySpec);
-                mac.update(String.join(".", header, payload).getBytes());
-                return Objects.equals(signature, base64Encoder.encodeToString(mac.doFinal()));
+                if (!key.isSecret()) return false;
+                CryptoEnginePool.PooledMac pooled = enginePool.borrowMac(signAlgorithm, key.getSecretKey());
+                try {
+                    // Decode the presented MAC once and compare raw bytes in constant time.
+                    if (!segments.decodeSignature(pooled.presented)) return false;
+                    pooled.mac.update(token, 0, segments.signingInputLength());
+                    pooled.mac.doFinal(pooled.computed, 0);
+                    return MessageDigest.isEqual(pooled.computed, pooled.presented);
+                } finally {
+                    enginePool.returnMac(signAlgorithm, key.getSecretKey(), pooled);
+                }
             } else {
-                Signature verifier = Signature.getInstance(signAlgorithm, "BC");
-                KeyFactory kf = KeyFactory.getInstance("RSA");
-                PublicKey publicKey = kf.generatePublic(new X509EncodedKeySpec(key));
-                verifier.initVerify(publicKey);
-                verifier.update(String.join(".", header, payload).getBytes());
-                return verifier.verify(base64Decoder.decode(signature));
+                if (!key.isPublic()) return false;
+                int signatureLength = segments.decodeSignatureInPlace();
+                if (signatureLength < 0) return false;
+                Signature verifier = enginePool.borrowSignature(signAlgorithm);
+                try {
+                    verifier.initVerify(key.getPublicKey());
+                    verifier.update(token, 0, segments.signingInputLength());
+                    return verifier.verify(token, segments.signatureStart(), signatureLength);
+                } finally {
+                    enginePool.returnSignature(signAlgorithm, verifier);
+                }
             }
         } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
             throw new UnreachableException(e);
-        } catch (SignatureException | InvalidKeyException | InvalidKeySpecException e) {
+        } catch (SignatureException | InvalidKeyException | ShortBufferException e) {
             return false;
         }
 
     }
 
-    public <T> T unsign(String message, byte[] key, TypeReference<T> typeReference) {
-        String[] tokens = message.split("\\.", 3);
-        if (tokens.length != 3) return null;
+    private <T> T unsign(String message, BiFunction<JwtHeader, String, JwtKey> keySelector, TypeReference<T> typeReference) {
+        if (typeReference.getType() == JwtClaim.class) {
+            @SuppressWarnings("unchecked")
+            JwtPayloadReader<T> claimReader = (JwtPayloadReader<T>) (JwtPayloadReader<JwtClaim>) JwtClaimCodec::read;
+            return unsign(message, keySelector, claimReader);
+        }
+        return unsign(message, keySelector, (mapper, json, offset, length) -> mapper.readValue(json, offset, length, typeReference));
+    }
+
+    private <T> T unsign(String message, BiFunction<JwtHeader, String, JwtKey> keySelector, JwtPayloadReader<T> payloadReader) {
+        VerifiedJwt verified = verify(message, keySelector);
+        if (verified == null) return null;
         try {
-            JwtHeader header = mapper.readValue(base64Decoder.decode(tokens[0]), JwtHeader.class);
-            if (verifySignature(header.getAlg(), tokens[2], key, tokens[0], tokens[1])) {
-                return decodePayload(/*Payload*/tokens[1], typeReference);
-            } else {
+            return payloadReader.read(mapper, verified.bytes(), verified.payloadOffset(), verified.payloadLength());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private VerifiedJwt verify(String message, BiFunction<JwtHeader, String, JwtKey> keySelector) {
+        BouncrMetrics metrics = this.metrics;
+        TokenSegments segments = TokenSegments.split(message);
+        if (segments == null) {
+            metrics.recordVerificationFailure(VerificationFailure.MALFORMED);
+            return null;
+        }
+        JwtHeader header;
+        String signAlgorithm;
+        int slot = ParsedHeader.slot(segments.bytes, segments.headerEnd, parsedHeaders.length);
+        ParsedHeader parsed = parsedHeaders[slot];
+        ParsedHeader unverified = null;
+        if (parsed != null && parsed.matches(segments.bytes, segments.headerEnd)) {
+            header = parsed.toHeader();
+            signAlgorithm = parsed.signAlgorithm;
+        } else {
+            try {
+                header = mapper.readValue(segments.decodeHeader(), JwtHeader.class);
+                if (header == null) throw new JsonMappingException(null, "JWT header is null");
+            } catch (IOException e) {
+                metrics.recordVerificationFailure(VerificationFailure.MALFORMED);
+                throw new UncheckedIOException(e);
+            } catch (IllegalArgumentException e) {
+                metrics.recordVerificationFailure(VerificationFailure.MALFORMED);
+                throw e;
+            }
+
+            try {
+                signAlgorithm = signAlgorithm(header.getAlg());
+            } catch (MisconfigurationException e) {
+                metrics.recordVerificationFailure(VerificationFailure.BAD_ALGORITHM);
+                throw e;
+            }
+            if (signAlgorithm.equals("none")) {
+                metrics.recordVerificationFailure(VerificationFailure.BAD_ALGORITHM);
+                throw new MisconfigurationException("bouncr.ALG_NONE_NOT_ALLOWED");
+            }
+            // Taken before the key selector sees the header, and stored once the signature verifies.
+            unverified = new ParsedHeader(segments.bytes, segments.headerEnd, header, signAlgorithm);
+        }
+        JwtKey key = keySelector.apply(header, signAlgorithm);
+        if (key == null) {
+            metrics.recordVerificationFailure(VerificationFailure.UNKNOWN_KEY);
+            return null;
+        }
+        if (!key.accepts(header.getAlg())
+                || (signAlgorithm.startsWith("Hmac") ? !key.isSecret() : !key.isPublic())) {
+            metrics.recordVerificationFailure(VerificationFailure.BAD_ALGORITHM);
+            return null;
+        }
+
+        boolean timed = metrics != BouncrMetrics.NOOP;
+        long start = timed ? System.nanoTime() : 0L;
+        boolean valid = verifySignature(signAlgorithm, key, segments);
+        if (timed) metrics.recordVerify(header.getAlg(), System.nanoTime() - start);
+        if (!valid) {
+            metrics.recordVerificationFailure(VerificationFailure.BAD_SIGNATURE);
+            return null;
+        }
+        if (unverified != null) {
+            parsedHeaders[slot] = unverified;
+        }
+
+        try {
+            int payloadLength = segments.decodePayloadInPlace();
+            if (!hasValidTimestamps(segments.bytes, segments.payloadStart(), payloadLength)) {
+                metrics.recordVerificationFailure(VerificationFailure.EXPIRED);
                 return null;
             }
+            return new VerifiedJwt(header, mapper, segments.bytes, segments.payloadStart(), payloadLength);
         } catch (IOException e) {
+            metrics.recordVerificationFailure(VerificationFailure.MALFORMED);
             throw new UncheckedIOException(e);
+        } catch (IllegalArgumentException e) {
+            metrics.recordVerificationFailure(VerificationFailure.MALFORMED);
+            throw e;
+        }
+    }
+
+    /**
+     * Checks exp, nbf and iat against the current time. The claims are read as primitive
+     * longs with a streaming parser, so an expired token is rejected before any binding.
+     */
+    private boolean hasValidTimestamps(byte[] json, int offset, int length) throws IOException {
+        if (!validateTimestamps) return true;
+        long now = clock != null ? clock.millis() / 1000L
+                : coarseClock != null ? coarseClock.epochSeconds()
+                : System.currentTimeMillis() / 1000L;
+        boolean hasIat = false;
+        try (JsonParser parser = mapper.getFactory().createParser(json, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return maxAgeSeconds < 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "exp" -> {
+                        long exp = numericDate(parser, value);
+                        if (exp == NOT_A_DATE || exp <= now - clockSkewSeconds) return false;
+                    }
+                    case "nbf" -> {
+                        long nbf = numericDate(parser, value);
+                        if (nbf == NOT_A_DATE || isInTheFuture(nbf, now)) return false;
+                    }
+                    case "iat" -> {
+                        long iat = numericDate(parser, value);
+                        if (iat == NOT_A_DATE || isInTheFuture(iat, now)) return false;
+                        if (maxAgeSeconds >= 0 && iat < now - clockSkewSeconds - maxAgeSeconds) return false;
+                        hasIat = true;
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return hasIat || maxAgeSeconds < 0;
+    }
+
+    /**
+     * The coarse clock lags the issuer, so a token issued this second may look issued in the future.
+     * Such a time is confirmed against the system clock before it is rejected.
+     */
+    private boolean isInTheFuture(long time, long now) {
+        if (time <= now + clockSkewSeconds) return false;
+        return clock != null || time > System.currentTimeMillis() / 1000L + clockSkewSeconds;
+    }
+
+    private static long numericDate(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                return parser.getBigIntegerValue().signum() > 0 ? Long.MAX_VALUE : NOT_A_DATE + 1;
+            }
+            return parser.getLongValue();
+        }
+        if (value == JsonToken.VALUE_NUMBER_FLOAT) {
+            return (long) Math.floor(parser.getDoubleValue());
+        }
+        parser.skipChildren();
+        return NOT_A_DATE;
+    }
+
+    /**
+     * Checks cheaply whether a token can possibly verify, before any Base64 decoding of the
+     * payload or signature and before any crypto. The token must:
+     * <ul>
+     *   <li>be no longer than {@code maxLength}</li>
+     *   <li>consist of three base64url segments, without padding, and a non-empty header and payload</li>
+     *   <li>have a header object naming a supported algorithm other than none, which the key accepts if a key is given</li>
+     *   <li>have a signature segment of the length that the algorithm, and the key for RSA, produce</li>
+     * </ul>
+     * The algorithm of a header that has verified before is read from the header cache of
+     * {@link #verify(String, JwtKey)}. Any other header is decoded and parsed, and is not added to the cache.
+     * Failures are not recorded to the metrics.
+     *
+     * @param message the token
+     * @param maxLength the maximum length of the token
+     * @param key the verification key, or null if it is not known before the header is resolved
+     * @return the reason the token cannot verify, or null if it may verify
+     */
+    public VerificationFailure precheck(String message, int maxLength, JwtKey key) {
+        int length = message.length();
+        if (length > maxLength) return VerificationFailure.MALFORMED;
+        int headerEnd = -1;
+        int payloadEnd = -1;
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (c == '.') {
+                if (headerEnd < 0) {
+                    headerEnd = i;
+                } else if (payloadEnd < 0) {
+                    payloadEnd = i;
+                } else {
+                    return VerificationFailure.MALFORMED;
+                }
+            } else if (!Base64Url.isAlphabet(c)) {
+                return VerificationFailure.MALFORMED;
+            }
+        }
+        if (payloadEnd < 0 || headerEnd == 0 || payloadEnd == headerEnd + 1) return VerificationFailure.MALFORMED;
+
+        String alg;
+        String signAlgorithm;
+        ParsedHeader parsed = parsedHeaders[ParsedHeader.slot(message, headerEnd, parsedHeaders.length)];
+        if (parsed != null && parsed.matches(message, headerEnd)) {
+            alg = parsed.alg;
+            signAlgorithm = parsed.signAlgorithm;
+        } else {
+            byte[] encoded = message.substring(0, headerEnd).getBytes(StandardCharsets.US_ASCII);
+            JwtHeader header;
+            try {
+                header = mapper.readValue(Base64Url.decode(encoded, 0, headerEnd), JwtHeader.class);
+            } catch (IOException | IllegalArgumentException e) {
+                return VerificationFailure.MALFORMED;
+            }
+            if (header == null || header.getAlg() == null) return VerificationFailure.MALFORMED;
+            alg = header.getAlg();
+            signAlgorithm = ALGORITHMS.getString(alg);
+            if (signAlgorithm == null || signAlgorithm.equals("none")) return VerificationFailure.BAD_ALGORITHM;
+        }
+
+        boolean hmac = signAlgorithm.startsWith("Hmac");
+        if (key != null && (!key.accepts(alg) || (hmac ? !key.isSecret() : !key.isPublic()))) {
+            return VerificationFailure.BAD_ALGORITHM;
+        }
+        int signatureLength = signatureLength(alg, key);
+        if (signatureLength > 0 && length - payloadEnd - 1 != (signatureLength * 4 + 2) / 3) {
+            return VerificationFailure.BAD_SIGNATURE;
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of header segments in the parsed header cache
+     */
+    int parsedHeaderCount() {
+        int count = 0;
+        for (ParsedHeader parsed : parsedHeaders) {
+            if (parsed != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the length of a raw signature of the algorithm, or -1 if it depends on a key that is not given
+     */
+    private static int signatureLength(String alg, JwtKey key) {
+        return switch (alg) {
+            case "HS256" -> 32;
+            case "HS384" -> 48;
+            case "HS512", "ES256", "Ed25519" -> 64;
+            case "ES384" -> 96;
+            case "ES512" -> 132;
+            case "RS256", "RS384", "RS512", "PS256", "PS384", "PS512" ->
+                    key != null && key.getPublicKey() instanceof RSAPublicKey rsa
+                            ? (rsa.getModulus().bitLength() + 7) / 8
+                            : -1;
+            // EdDSA may be Ed25519 or Ed448.
+            default -> -1;
+        };
+    }
+
+    /**
+     * Verifies a token without binding its payload.
+     *
+     * @return the verified token, or null if the signature is invalid
+     */
+    public VerifiedJwt verify(String message, JwtKey key) {
+        return verify(message, (header, signAlgorithm) -> key);
+    }
+
+    /**
+     * Verifies a token with the key that the resolver selects, without binding its payload.
+     *
+     * @return the verified token, or null if the signature is invalid or no key is found
+     */
+    public VerifiedJwt verify(String message, JwtKeyResolver keyResolver) {
+        return verify(message, (header, signAlgorithm) -> keyResolver.resolve(header));
+    }
+
+    /**
+     * Verifies many tokens at once.
+     *
+     * Identical tokens are verified once, and the key is resolved once for each distinct header,
+     * i.e. for each (alg, kid). The tokens are verified in parallel in chunks of the same header,
+     * so a chunk keeps reusing one pooled engine. A token that fails for any reason yields null
+     * instead of an exception.
+     *
+     * @param tokens the tokens. Null elements yield null.
+     * @param keyResolver the resolver for the verification keys
+     * @param executor the executor to verify on
+     * @return the verified tokens in the order of {@code tokens}. Duplicate tokens share one instance.
+     */
+    public List<VerifiedJwt> verifyAll(List<String> tokens, JwtKeyResolver keyResolver, Executor executor) {
+        Map<String, BiFunction<JwtHeader, String, JwtKey>> selectors = new HashMap<>();
+        return verifyGrouped(tokens, encodedHeader -> selectors.computeIfAbsent(encodedHeader, h -> {
+            JwtKey key = resolveQuietly(h, keyResolver);
+            return (header, signAlgorithm) -> key;
+        }), executor);
+    }
+
+    /**
+     * Verifies many tokens at once with a single key.
+     *
+     * @see #verifyAll(List, JwtKeyResolver, Executor)
+     */
+    public List<VerifiedJwt> verifyAll(List<String> tokens, JwtKey key, Executor executor) {
+        BiFunction<JwtHeader, String, JwtKey> selector = (header, signAlgorithm) -> key;
+        return verifyGrouped(tokens, encodedHeader -> selector, executor);
+    }
+
+    private List<VerifiedJwt> verifyGrouped(List<String> tokens,
+                                            Function<String, BiFunction<JwtHeader, String, JwtKey>> selectorForHeader,
+                                            Executor executor) {
+        // Deduplicate the tokens and group them by their encoded header.
+        Map<String, Integer> uniqueIndex = new HashMap<>();
+        List<String> unique = new ArrayList<>();
+        List<BiFunction<JwtHeader, String, JwtKey>> selectors = new ArrayList<>();
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        int[] slots = new int[tokens.size()];
+        for (int i = 0; i < slots.length; i++) {
+            String token = tokens.get(i);
+            if (token == null) {
+                slots[i] = -1;
+                continue;
+            }
+            Integer index = uniqueIndex.putIfAbsent(token, unique.size());
+            if (index == null) {
+                index = unique.size();
+                unique.add(token);
+                int dot = token.indexOf('.');
+                String encodedHeader = dot < 0 ? token : token.substring(0, dot);
+                selectors.add(selectorForHeader.apply(encodedHeader));
+                groups.computeIfAbsent(encodedHeader, h -> new ArrayList<>()).add(index);
+            }
+            slots[i] = index;
+        }
+
+        int[] order = new int[unique.size()];
+        int n = 0;
+        for (List<Integer> group : groups.values()) {
+            for (int index : group) order[n++] = index;
+        }
+        VerifiedJwt[] results = new VerifiedJwt[unique.size()];
+        int chunkSize = Math.max(1, (order.length + 4 * Runtime.getRuntime().availableProcessors() - 1)
+                / (4 * Runtime.getRuntime().availableProcessors()));
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < order.length; from += chunkSize) {
+            int start = from;
+            int end = Math.min(from + chunkSize, order.length);
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (int j = start; j < end; j++) {
+                    int index = order[j];
+                    results[index] = verifyQuietly(unique.get(index), selectors.get(index));
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).join();
+
+        List<VerifiedJwt> verified = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            verified.add(slot < 0 ? null : results[slot]);
+        }
+        return verified;
+    }
+
+    private JwtKey resolveQuietly(String encodedHeader, JwtKeyResolver keyResolver) {
+        try {
+            return keyResolver.resolve(mapper.readValue(base64Decoder.decode(encodedHeader), JwtHeader.class));
+        } catch (IOException | RuntimeException e) {
+            return null;
         }
     }
 
+    private VerifiedJwt verifyQuietly(String token, BiFunction<JwtHeader, String, JwtKey> keySelector) {
+        try {
+            return verify(token, keySelector);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public <T> T unsign(String message, byte[] key, TypeReference<T> typeReference) {
+        return unsign(message, (header, signAlgorithm) -> decodeVerificationKey(signAlgorithm, key), typeReference);
+    }
+
     public <T> T unsign(String message, byte[] key, Class<T> claimClass) {
         return unsign(message, key, new TypeReference<T>() {
             @Override
@@ -112,7 +664,7 @@ public class JsonWebToken extends SystemComponent<JsonWebToken> {
     }
 
     public <T> T unsign(String message, PublicKey pkey, TypeReference<T> typeReference) {
-        return unsign(message, pkey.getEncoded(), typeReference);
+        return unsign(message, JwtKey.of(pkey), typeReference);
     }
 
     public <T> T unsign(String message, PublicKey pkey, Class<T> claimClass) {
@@ -122,62 +674,263 @@ public class JsonWebToken extends SystemComponent<JsonWebToken> {
         });
     }
 
+    public <T> T unsign(String message, JwtKey key, TypeReference<T> typeReference) {
+        return unsign(message, (header, signAlgorithm) -> key, typeReference);
+    }
+
+    /**
+     * Verifies a token and reads its payload with the given reader.
+     */
+    public <T> T unsign(String message, JwtKey key, JwtPayloadReader<T> payloadReader) {
+        return unsign(message, (header, signAlgorithm) -> key, payloadReader);
+    }
+
+    public <T> T unsign(String message, JwtKey key, Class<T> claimClass) {
+        return unsign(message, key, new TypeReference<T>() {
+            @Override
+            public Type getType() { return claimClass; }
+        });
+    }
+
+    /**
+     * Verifies a token with the key that the resolver selects for its header, typically by {@code kid}.
+     */
+    public <T> T unsign(String message, JwtKeyResolver keyResolver, TypeReference<T> typeReference) {
+        return unsign(message, (header, signAlgorithm) -> keyResolver.resolve(header), typeReference);
+    }
+
+    public <T> T unsign(String message, JwtKeyResolver keyResolver, JwtPayloadReader<T> payloadReader) {
+        return unsign(message, (header, signAlgorithm) -> keyResolver.resolve(header), payloadReader);
+    }
+
+    public <T> T unsign(String message, JwtKeyResolver keyResolver, Class<T> claimClass) {
+        return unsign(message, keyResolver, new TypeReference<T>() {
+            @Override
+            public Type getType() { return claimClass; }
+        });
+    }
+
     public String sign(String payload, JwtHeader header, byte[] key) {
-        String encodedHeader = encodeHeader(header);
+        String signAlgorithm = signAlgorithm(header.getAlg());
+        if (signAlgorithm.equals("none")) {
+            return sign(payload, header, (JwtKey) null);
+        }
+        return sign(payload, header, decodeSigningKey(signAlgorithm, key));
+    }
+
+    public String sign(String payload, JwtHeader header, JwtKey key) {
+        return sign(encodeHeader(header), header.getAlg(), payload, key);
+    }
+
+    private String sign(String encodedHeader, String alg, String payload, JwtKey key) {
+        BouncrMetrics metrics = this.metrics;
+        boolean timed = metrics != BouncrMetrics.NOOP;
+        long start = timed ? System.nanoTime() : 0L;
         try {
-            String signAlgorithm = ALGORITHMS.getString(header.getAlg());
-            if (signAlgorithm == null) throw new MisconfigurationException("bouncr.NO_SUCH_JWT_ALGORITHM", header.getAlg());
+            String signAlgorithm = signAlgorithm(alg);
             String encodedSignature = "";
             if (!signAlgorithm.equals("none")) {
                 if (signAlgorithm.startsWith("Hmac")) {
-                    SecretKeySpec keySpec = new SecretKeySpec(key, signAlgorithm);
-                    Mac mac = Mac.getInstance(signAlgorithm);
-                    mac.init(keySpec);
-                    mac.update(String.join(".", encodedHeader, payload).getBytes());
-                    encodedSignature = base64Encoder.encodeToString(mac.doFinal());
+                    if (key == null || !key.isSecret()) throw new InvalidKeyException();
+                    CryptoEnginePool.PooledMac pooled = enginePool.borrowMac(signAlgorithm, key.getSecretKey());
+                    try {
+                        pooled.mac.update(String.join(".", encodedHeader, payload).getBytes(StandardCharsets.US_ASCII));
+                        encodedSignature = base64Encoder.encodeToString(pooled.mac.doFinal());
+                    } finally {
+                        enginePool.returnMac(signAlgorithm, key.getSecretKey(), pooled);
+                    }
                 } else {
-                    Signature signature = Signature.getInstance(signAlgorithm, "BC");
-                    KeyFactory kf = KeyFactory.getInstance("RSA");
-                    PrivateKey privateKey = kf.generatePrivate(new PKCS8EncodedKeySpec(key));
-                    signature.initSign(privateKey, prng);
-                    signature.update(String.join(".", encodedHeader, payload).getBytes());
-                    encodedSignature = base64Encoder.encodeToString(signature.sign());
+                    if (key == null || !key.isPrivate()) throw new InvalidKeyException();
+                    Signature signature = enginePool.borrowSignature(signAlgorithm);
+                    try {
+                        signature.initSign(key.getPrivateKey(), randomStripes != null ? randomStripes.current() : prng);
+                        signature.update(String.join(".", encodedHeader, payload).getBytes(StandardCharsets.US_ASCII));
+                        encodedSignature = base64Encoder.encodeToString(signature.sign());
+                    } finally {
+                        enginePool.returnSignature(signAlgorithm, signature);
+                    }
                 }
             }
+            if (timed) metrics.recordSign(alg, System.nanoTime() - start);
             return String.join(".", encodedHeader, payload, encodedSignature);
         } catch (NoSuchAlgorithmException e) {
             throw new UnreachableException(e);
         } catch (NoSuchProviderException e) {
             throw new MisconfigurationException("bouncr.NO_SUCH_CRYPTO_PROVIDER",
                     "BouncyCastle provider is not registered. Add Security.addProvider(new BouncyCastleProvider()).");
-        } catch (SignatureException | InvalidKeyException | InvalidKeySpecException e) {
+        } catch (SignatureException | InvalidKeyException e) {
             throw new MisconfigurationException("bouncr.INVALID_SIGNING_KEY",
                     "The private key is invalid or incompatible with the signing algorithm.");
         }
     }
 
-    public String sign(Map<String, Object> claims, JwtHeader header, byte[] key) {
-        String encodedPayload = some(claims,
+    private String encodePayload(Object claims) {
+        if (claims != null && claims.getClass() == JwtClaim.class) {
+            return some((JwtClaim) claims,
+                    c -> JwtClaimCodec.write(mapper, c),
+                    s -> base64Encoder.encodeToString(s)).orElse(null);
+        }
+        return some(claims,
                 p -> mapper.writeValueAsBytes(p),
                 s -> base64Encoder.encodeToString(s)).orElse(null);
-        return sign(encodedPayload, header, key);
+    }
 
+    public String sign(Map<String, Object> claims, JwtHeader header, byte[] key) {
+        return sign(encodePayload(claims), header, key);
     }
 
     public String sign(Map<String, Object> claims, JwtHeader header, PrivateKey key) {
-        return sign(claims, header, key.getEncoded());
+        return sign(claims, header, JwtKey.of(key));
     }
 
-    public String sign(JwtClaim claims, JwtHeader header, byte[] key) {
-        String encodedPayload = some(claims,
-                p -> mapper.writeValueAsBytes(p),
-                s -> base64Encoder.encodeToString(s)).orElse(null);
-        return sign(encodedPayload, header, key);
+    public String sign(Map<String, Object> claims, JwtHeader header, JwtKey key) {
+        return sign(encodePayload(claims), header, key);
+    }
 
+    public String sign(JwtClaim claims, JwtHeader header, byte[] key) {
+        return sign(encodePayload(claims), header, key);
     }
 
     public String sign(JwtClaim claims, JwtHeader header, PrivateKey key) {
-        return sign(claims, header, key.getEncoded());
+        return sign(claims, header, JwtKey.of(key));
+    }
+
+    public String sign(JwtClaim claims, JwtHeader header, JwtKey key) {
+        return sign(encodePayload(claims), header, key);
+    }
+
+    /**
+     * Signs many claims with the same header and key.
+     *
+     * The header is encoded once and the signatures are computed in parallel on the
+     * signing executor. The tokens are returned in the order of the claims.
+     *
+     * @param claims the claims, each a {@link JwtClaim}, a {@link Map} or any object Jackson can serialize
+     * @param header the header shared by all tokens
+     * @param key the signing key
+     * @return the tokens
+     */
+    public List<String> signAll(Collection<?> claims, JwtHeader header, JwtKey key) {
+        List<String> tokens = new ArrayList<>(claims.size());
+        signEach(claims.iterator(), header, key).forEachRemaining(tokens::add);
+        return tokens;
+    }
+
+    public List<String> signAll(Collection<?> claims, JwtHeader header, PrivateKey key) {
+        return signAll(claims, header, JwtKey.of(key));
+    }
+
+    public List<String> signAll(Collection<?> claims, JwtHeader header, byte[] key) {
+        String signAlgorithm = signAlgorithm(header.getAlg());
+        return signAll(claims, header, signAlgorithm.equals("none") ? null : decodeSigningKey(signAlgorithm, key));
+    }
+
+    /**
+     * Signs claims as the returned iterator is consumed, for batches too large to hold in memory.
+     *
+     * A bounded number of claims are signed ahead on the signing executor,
+     * and the tokens are returned in the order of the claims.
+     *
+     * @param claims the claims
+     * @param header the header shared by all tokens
+     * @param key the signing key
+     * @return an iterator over the tokens
+     */
+    public Iterator<String> signEach(Iterator<?> claims, JwtHeader header, JwtKey key) {
+        String alg = header.getAlg();
+        signAlgorithm(alg);
+        String encodedHeader = encodeHeader(header);
+        Executor executor = signingExecutor != null ? signingExecutor : ForkJoinPool.commonPool();
+        int window = 2 * Runtime.getRuntime().availableProcessors();
+
+        return new Iterator<>() {
+            private final ArrayDeque<CompletableFuture<String>> inFlight = new ArrayDeque<>(window);
+            private boolean failed;
+
+            private void fill() {
+                while (!failed && inFlight.size() < window && claims.hasNext()) {
+                    Object claim = claims.next();
+                    inFlight.add(CompletableFuture.supplyAsync(
+                            () -> sign(encodedHeader, alg, encodePayload(claim), key), executor));
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !inFlight.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                fill();
+                CompletableFuture<String> token = inFlight.poll();
+                if (token == null) throw new NoSuchElementException();
+                try {
+                    return token.join();
+                } catch (CompletionException e) {
+                    failed = true;
+                    inFlight.forEach(f -> f.cancel(false));
+                    inFlight.clear();
+                    throw e.getCause() instanceof RuntimeException cause ? cause : e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Signs claims on the async executor.
+     *
+     * @return the token. It fails with {@link RejectedExecutionException} if too many tasks are pending.
+     * @throws IllegalStateException if the component is not started
+     */
+    public CompletableFuture<String> signAsync(Map<String, Object> claims, JwtHeader header, JwtKey key) {
+        return async(() -> sign(claims, header, key));
+    }
+
+    /**
+     * Signs claims on the async executor.
+     *
+     * @return the token. It fails with {@link RejectedExecutionException} if too many tasks are pending.
+     * @throws IllegalStateException if the component is not started
+     */
+    public CompletableFuture<String> signAsync(JwtClaim claims, JwtHeader header, JwtKey key) {
+        return async(() -> sign(claims, header, key));
+    }
+
+    /**
+     * Verifies a token on the async executor.
+     *
+     * @return the payload, or null if the token is invalid.
+     *         It fails with {@link RejectedExecutionException} if too many tasks are pending.
+     * @throws IllegalStateException if the component is not started
+     */
+    public <T> CompletableFuture<T> unsignAsync(String message, JwtKey key, TypeReference<T> typeReference) {
+        return async(() -> unsign(message, key, typeReference));
+    }
+
+    public <T> CompletableFuture<T> unsignAsync(String message, JwtKey key, Class<T> claimClass) {
+        return async(() -> unsign(message, key, claimClass));
+    }
+
+    public <T> CompletableFuture<T> unsignAsync(String message, JwtKeyResolver keyResolver, TypeReference<T> typeReference) {
+        return async(() -> unsign(message, keyResolver, typeReference));
+    }
+
+    public <T> CompletableFuture<T> unsignAsync(String message, JwtKeyResolver keyResolver, Class<T> claimClass) {
+        return async(() -> unsign(message, keyResolver, claimClass));
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> task) {
+        Executor executor = asyncExecutor != null ? asyncExecutor : cryptoExecutor;
+        if (mapper == null || executor == null) {
+            throw new IllegalStateException("JsonWebToken is not started");
+        }
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
     @Override
@@ -197,16 +950,171 @@ public class JsonWebToken extends SystemComponent<JsonWebToken> {
                 if (component.prng == null) {
                     component.prng = new SecureRandom();
                 }
+                component.randomStripes = component.prngStripes > 1
+                        ? new SecureRandomStripes(component.prng, component.prngStripes)
+                        : null;
+                component.enginePool = new CryptoEnginePool(component.enginePoolSize);
+                component.encodedHeaders = new ConcurrentHashMap<>();
+                component.coarseClock = CoarseClock.start();
+                if (component.asyncExecutor == null) {
+                    component.cryptoExecutor = component.asyncVirtualThreads
+                            ? CryptoExecutor.virtual(component.asyncCapacity)
+                            : CryptoExecutor.platform(Runtime.getRuntime().availableProcessors(), component.asyncCapacity);
+                }
             }
 
             @Override
             public void stop(JsonWebToken component) {
                 component.mapper = null;
+                if (component.coarseClock != null) {
+                    component.coarseClock.stop();
+                    component.coarseClock = null;
+                }
+                if (component.enginePool != null) {
+                    component.enginePool.clear();
+                }
+                if (component.cryptoExecutor != null) {
+                    component.cryptoExecutor.shutdown();
+                    component.cryptoExecutor = null;
+                }
             }
         };
     }
 
+    /**
+     * Sets the maximum number of distinct headers whose encoding is kept for signing. Defaults to 64.
+     *
+     * @param headerCacheSize the maximum number of encoded headers, or 0 to encode every header
+     */
+    public void setHeaderCacheSize(int headerCacheSize) {
+        this.headerCacheSize = headerCacheSize;
+    }
+
+    /**
+     * Sets the source of randomness for RSA-PSS and ECDSA signatures. Unless striping is disabled,
+     * it is the entropy source of the per-stripe generators rather than being used directly.
+     *
+     * @param prng the source of randomness
+     */
     public void setPrng(SecureRandom prng) {
         this.prng = prng;
     }
+
+    /**
+     * Sets the number of DRBG instances that concurrent signing threads are spread over.
+     * Defaults to twice the number of available processors, rounded up to a power of two.
+     *
+     * @param prngStripes the number of instances, or 1 to use the prng for all threads
+     */
+    public void setPrngStripes(int prngStripes) {
+        this.prngStripes = prngStripes;
+    }
+
+    /**
+     * Sets the maximum number of idle Mac/Signature engines kept per algorithm (and key).
+     * Defaults to the number of available processors.
+     *
+     * @param enginePoolSize the maximum number of idle engines
+     */
+    public void setEnginePoolSize(int enginePoolSize) {
+        this.enginePoolSize = enginePoolSize;
+    }
+
+    /**
+     * Enables the validation of the exp, nbf and iat claims of verified tokens. Enabled by default.
+     *
+     * @param validateTimestamps false to accept tokens regardless of their time claims
+     */
+    public void setValidateTimestamps(boolean validateTimestamps) {
+        this.validateTimestamps = validateTimestamps;
+    }
+
+    /**
+     * Sets the tolerance for clock differences between the issuer and this server. Defaults to zero.
+     *
+     * @param clockSkew the allowed clock skew
+     */
+    public void setClockSkew(Duration clockSkew) {
+        this.clockSkewSeconds = clockSkew.getSeconds();
+    }
+
+    /**
+     * Rejects tokens issued longer ago than the given age. Tokens without iat are rejected too.
+     *
+     * @param maxAge the maximum token age, or null for no limit
+     */
+    public void setMaxAge(Duration maxAge) {
+        this.maxAgeSeconds = maxAge != null ? maxAge.getSeconds() : -1L;
+    }
+
+    /**
+     * @return the maximum token age, or null for no limit
+     */
+    public Duration getMaxAge() {
+        return maxAgeSeconds >= 0 ? Duration.ofSeconds(maxAgeSeconds) : null;
+    }
+
+    /**
+     * Sets the clock for validating time claims. By default, a coarse clock refreshed
+     * by a background thread while the component is running is used.
+     *
+     * @param clock the clock
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the receiver of sign and verify measurements.
+     *
+     * @param metrics the metrics, or null to disable measurements
+     */
+    public void setMetrics(BouncrMetrics metrics) {
+        this.metrics = metrics != null ? metrics : BouncrMetrics.NOOP;
+    }
+
+    /**
+     * Sets the executor that {@link #signAll} and {@link #signEach} spread the signing over.
+     * Defaults to the common fork-join pool. A virtual-thread-per-task executor also works,
+     * because the engine pool holds no thread-local state.
+     *
+     * @param signingExecutor the executor
+     */
+    public void setSigningExecutor(Executor signingExecutor) {
+        this.signingExecutor = signingExecutor;
+    }
+
+    /**
+     * Sets the executor for {@link #signAsync} and {@link #unsignAsync}. By default, they run on a pool
+     * of threads sized to the cores, which accepts up to {@link #setAsyncCapacity} pending tasks.
+     *
+     * @param asyncExecutor the executor, or null for the default pool
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Runs the async methods on virtual threads instead of the default pool. Disabled by default.
+     * The number of pending tasks is still bounded by {@link #setAsyncCapacity}.
+     *
+     * @param asyncVirtualThreads true to use virtual threads
+     */
+    public void setAsyncVirtualThreads(boolean asyncVirtualThreads) {
+        this.asyncVirtualThreads = asyncVirtualThreads;
+    }
+
+    /**
+     * Sets the maximum number of async tasks queued or running on the default executor. Defaults to 1024.
+     * Tasks beyond it fail immediately with {@link RejectedExecutionException}.
+     *
+     * @param asyncCapacity the maximum number of pending tasks
+     */
+    public void setAsyncCapacity(int asyncCapacity) {
+        this.asyncCapacity = asyncCapacity;
+    }
+
+    public CryptoEnginePool getEnginePool() {
+        return enginePool;
+    }
 }
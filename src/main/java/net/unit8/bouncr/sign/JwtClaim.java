@@ -19,6 +19,8 @@ public class JwtClaim implements Serializable {
     private String aud;
     /** Expires*/
     private Long exp;
+    /** Not before */
+    private Long nbf;
     /** Issued at */
     private Long iat;
     /** Auth time */
@@ -127,6 +129,14 @@ public class JwtClaim implements Serializable {
         this.exp = exp;
     }
 
+    public Long getNbf() {
+        return nbf;
+    }
+
+    public void setNbf(Long nbf) {
+        this.nbf = nbf;
+    }
+
     public Long getIat() {
         return iat;
     }
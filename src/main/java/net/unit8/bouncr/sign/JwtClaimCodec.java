@@ -0,0 +1,184 @@
+package net.unit8.bouncr.sign;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Reads and writes {@link JwtClaim} with the streaming API instead of bean introspection.
+ *
+ * The output is the same bytes as the mapper writes, with nulls omitted.
+ * {@code address} and {@code updated_at} are still bound by the mapper. Reading falls back to
+ * the mapper for any value that needs a coercion, such as a number where a string is expected
+ * or an array around a single value.
+ */
+final class JwtClaimCodec {
+    /**
+     * Idle output buffers, one slot per stripe picked by thread id like {@link SecureRandomStripes},
+     * so that virtual threads share them too. A writer that finds its slot empty allocates a buffer.
+     */
+    private static final AtomicReferenceArray<ByteArrayBuilder> OUTPUTS = new AtomicReferenceArray<>(
+            Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1) << 1);
+
+    private JwtClaimCodec() {
+    }
+
+    static byte[] write(ObjectMapper mapper, JwtClaim claim) throws IOException {
+        int slot = (int) Thread.currentThread().threadId() & (OUTPUTS.length() - 1);
+        ByteArrayBuilder bb = OUTPUTS.getAndSet(slot, null);
+        if (bb == null) bb = new ByteArrayBuilder(512);
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(bb, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            // Jackson orders the properties renamed with @JsonProperty after the others.
+            writeString(gen, "iss", claim.getIss());
+            writeString(gen, "sub", claim.getSub());
+            writeString(gen, "aud", claim.getAud());
+            writeLong(gen, "exp", claim.getExp());
+            writeLong(gen, "nbf", claim.getNbf());
+            writeLong(gen, "iat", claim.getIat());
+            writeString(gen, "nonce", claim.getNonce());
+            writeString(gen, "acr", claim.getAcr());
+            writeString(gen, "amr", claim.getAmr());
+            writeString(gen, "azp", claim.getAzp());
+            writeString(gen, "name", claim.getName());
+            writeString(gen, "nickname", claim.getNickname());
+            writeString(gen, "profile", claim.getProfile());
+            writeString(gen, "picture", claim.getPicture());
+            writeString(gen, "website", claim.getWebsite());
+            writeString(gen, "email", claim.getEmail());
+            writeString(gen, "gender", claim.getGender());
+            writeString(gen, "birthdate", claim.getBirthdate());
+            writeString(gen, "zoneinfo", claim.getZoneinfo());
+            writeString(gen, "locale", claim.getLocale());
+            if (claim.getAddress() != null) {
+                gen.writeFieldName("address");
+                mapper.writeValue(gen, claim.getAddress());
+            }
+            writeLong(gen, "auth_time", claim.getAuthTime());
+            writeString(gen, "given_name", claim.getGivenName());
+            writeString(gen, "family_name", claim.getFamilyName());
+            writeString(gen, "middle_name", claim.getMiddleName());
+            writeString(gen, "preferred_username", claim.getPreferredUsername());
+            writeBoolean(gen, "email_verified", claim.getEmailVerified());
+            writeString(gen, "phone_number", claim.getPhoneNumber());
+            writeBoolean(gen, "phone_number_verified", claim.getPhoneNumberVerified());
+            if (claim.getUpdatedAt() != null) {
+                gen.writeFieldName("updated_at");
+                mapper.writeValue(gen, claim.getUpdatedAt());
+            }
+            gen.writeEndObject();
+        }
+        byte[] json = bb.toByteArray();
+        bb.reset();
+        OUTPUTS.lazySet(slot, bb);
+        return json;
+    }
+
+    private static void writeString(JsonGenerator gen, String name, String value) throws IOException {
+        if (value != null) gen.writeStringField(name, value);
+    }
+
+    private static void writeLong(JsonGenerator gen, String name, Long value) throws IOException {
+        if (value != null) gen.writeNumberField(name, value.longValue());
+    }
+
+    private static void writeBoolean(JsonGenerator gen, String name, Boolean value) throws IOException {
+        if (value != null) gen.writeBooleanField(name, value);
+    }
+
+    /**
+     * A {@link JwtPayloadReader} for {@link JwtClaim}.
+     */
+    static JwtClaim read(ObjectMapper mapper, byte[] json, int offset, int length) throws IOException {
+        JwtClaim claim = readStrictly(mapper, json, offset, length);
+        return claim != null ? claim : mapper.readValue(json, offset, length, JwtClaim.class);
+    }
+
+    /**
+     * @return the claims, or null if the payload needs the mapper
+     */
+    private static JwtClaim readStrictly(ObjectMapper mapper, byte[] json, int offset, int length) throws IOException {
+        JwtClaim claim = new JwtClaim();
+        Values values = new Values();
+        try (JsonParser parser = mapper.getFactory().createParser(json, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+            while (values.regular && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "iss" -> claim.setIss(values.text(parser, value));
+                    case "sub" -> claim.setSub(values.text(parser, value));
+                    case "aud" -> claim.setAud(values.text(parser, value));
+                    case "exp" -> claim.setExp(values.number(parser, value));
+                    case "nbf" -> claim.setNbf(values.number(parser, value));
+                    case "iat" -> claim.setIat(values.number(parser, value));
+                    case "auth_time" -> claim.setAuthTime(values.number(parser, value));
+                    case "nonce" -> claim.setNonce(values.text(parser, value));
+                    case "acr" -> claim.setAcr(values.text(parser, value));
+                    case "amr" -> claim.setAmr(values.text(parser, value));
+                    case "azp" -> claim.setAzp(values.text(parser, value));
+                    case "name" -> claim.setName(values.text(parser, value));
+                    case "given_name" -> claim.setGivenName(values.text(parser, value));
+                    case "family_name" -> claim.setFamilyName(values.text(parser, value));
+                    case "middle_name" -> claim.setMiddleName(values.text(parser, value));
+                    case "nickname" -> claim.setNickname(values.text(parser, value));
+                    case "preferred_username" -> claim.setPreferredUsername(values.text(parser, value));
+                    case "profile" -> claim.setProfile(values.text(parser, value));
+                    case "picture" -> claim.setPicture(values.text(parser, value));
+                    case "website" -> claim.setWebsite(values.text(parser, value));
+                    case "email" -> claim.setEmail(values.text(parser, value));
+                    case "email_verified" -> claim.setEmailVerified(values.bool(value));
+                    case "gender" -> claim.setGender(values.text(parser, value));
+                    case "birthdate" -> claim.setBirthdate(values.text(parser, value));
+                    case "zoneinfo" -> claim.setZoneinfo(values.text(parser, value));
+                    case "locale" -> claim.setLocale(values.text(parser, value));
+                    case "phone_number" -> claim.setPhoneNumber(values.text(parser, value));
+                    case "phone_number_verified" -> claim.setPhoneNumberVerified(values.bool(value));
+                    case "address" -> claim.setAddress(value == JsonToken.VALUE_NULL ? null
+                            : mapper.readValue(parser, ClaimAddress.class));
+                    case "updated_at" -> claim.setUpdatedAt(value == JsonToken.VALUE_NULL ? null
+                            : mapper.readValue(parser, LocalDateTime.class));
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return values.regular ? claim : null;
+    }
+
+    /**
+     * Reads values of the exact JSON type of a claim, and notes any other type.
+     */
+    private static final class Values {
+        private boolean regular = true;
+
+        String text(JsonParser parser, JsonToken value) throws IOException {
+            if (value == JsonToken.VALUE_STRING) return parser.getText();
+            return irregular(value);
+        }
+
+        Long number(JsonParser parser, JsonToken value) throws IOException {
+            if (value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                return parser.getLongValue();
+            }
+            return irregular(value);
+        }
+
+        Boolean bool(JsonToken value) {
+            if (value == JsonToken.VALUE_TRUE) return Boolean.TRUE;
+            if (value == JsonToken.VALUE_FALSE) return Boolean.FALSE;
+            return irregular(value);
+        }
+
+        private <T> T irregular(JsonToken value) {
+            if (value != JsonToken.VALUE_NULL) regular = false;
+            return null;
+        }
+    }
+}
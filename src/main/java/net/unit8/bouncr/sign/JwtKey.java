@@ -0,0 +1,113 @@
+package net.unit8.bouncr.sign;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Objects;
+
+/**
+ * A key that has already been parsed for signing or verifying JSON Web Tokens.
+ *
+ * Create it once when the key is configured and reuse it, so that the key material
+ * is not decoded again on every call.
+ */
+public final class JwtKey {
+    private final Key key;
+    private final String algorithm;
+
+    private JwtKey(Key key) {
+        this(key, null);
+    }
+
+    private JwtKey(Key key, String algorithm) {
+        this.key = Objects.requireNonNull(key, "key");
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Creates a key for verifying RSA, ECDSA or EdDSA signatures.
+     *
+     * @param publicKey the public key
+     * @return a verification key
+     */
+    public static JwtKey of(PublicKey publicKey) {
+        return new JwtKey(publicKey);
+    }
+
+    /**
+     * Creates a key for creating RSA, ECDSA or EdDSA signatures.
+     *
+     * @param privateKey the private key
+     * @return a signing key
+     */
+    public static JwtKey of(PrivateKey privateKey) {
+        return new JwtKey(privateKey);
+    }
+
+    /**
+     * Creates a key for signing and verifying HMAC signatures.
+     *
+     * @param secretKey the shared secret
+     * @return a secret key
+     */
+    public static JwtKey of(SecretKey secretKey) {
+        return new JwtKey(secretKey);
+    }
+
+    /**
+     * Creates a key for signing and verifying HMAC signatures.
+     *
+     * @param secret the raw shared secret
+     * @return a secret key
+     */
+    public static JwtKey hmac(byte[] secret) {
+        return new JwtKey(new SecretKeySpec(secret, "HMAC"));
+    }
+
+    /**
+     * Returns a key that only verifies tokens whose {@code alg} header equals the given algorithm.
+     *
+     * @param algorithm the JWS algorithm name, e.g. RS256
+     * @return a key pinned to the algorithm
+     */
+    public JwtKey withAlgorithm(String algorithm) {
+        return new JwtKey(key, algorithm);
+    }
+
+    /**
+     * @return the pinned JWS algorithm, or null if any compatible algorithm is accepted
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    boolean accepts(String alg) {
+        return algorithm == null || algorithm.equals(alg);
+    }
+
+    boolean isSecret() {
+        return key instanceof SecretKey;
+    }
+
+    SecretKey getSecretKey() {
+        return (SecretKey) key;
+    }
+
+    boolean isPublic() {
+        return key instanceof PublicKey;
+    }
+
+    PublicKey getPublicKey() {
+        return (PublicKey) key;
+    }
+
+    boolean isPrivate() {
+        return key instanceof PrivateKey;
+    }
+
+    PrivateKey getPrivateKey() {
+        return (PrivateKey) key;
+    }
+}
@@ -0,0 +1,150 @@
+package net.unit8.bouncr.sign;
+
+import enkan.component.ComponentLifecycle;
+import enkan.component.SystemComponent;
+import enkan.exception.MisconfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A set of verification keys selected by the {@code kid} header.
+ *
+ * The keys are held in an immutable map that is replaced atomically, so resolving a key
+ * never takes a lock and a rotation never blocks verification. When a JWKS file is configured,
+ * it is loaded on start and reloaded whenever its modification time changes. Start fails if the
+ * file cannot be loaded; a failed reload keeps the current keys.
+ */
+public class JwtKeyRegistry extends SystemComponent<JwtKeyRegistry> implements JwtKeyResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(JwtKeyRegistry.class);
+
+    private volatile Map<String, JwtKey> keys = Map.of();
+    private final AtomicLong generation = new AtomicLong();
+
+    private Path jwksPath;
+    private Duration reloadInterval = Duration.ofSeconds(10);
+    private ScheduledExecutorService watcher;
+    private FileTime lastModified;
+
+    /**
+     * Returns the key for the header's {@code kid}. A header without {@code kid} resolves to
+     * the key registered without kid, or to the only key when the registry holds exactly one.
+     */
+    @Override
+    public JwtKey resolve(JwtHeader header) {
+        Map<String, JwtKey> current = keys;
+        String kid = header.getKid();
+        if (kid != null) {
+            return current.get(kid);
+        }
+        JwtKey key = current.get("");
+        if (key == null && current.size() == 1) {
+            key = current.values().iterator().next();
+        }
+        return key;
+    }
+
+    /**
+     * Replaces all keys at once.
+     *
+     * @param keys the keys keyed by kid
+     */
+    public void setKeys(Map<String, JwtKey> keys) {
+        Map<String, JwtKey> copy = Map.copyOf(keys);
+        if (copy.equals(this.keys)) return;
+        this.keys = copy;
+        generation.incrementAndGet();
+    }
+
+    public Map<String, JwtKey> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return a number incremented each time the set of keys changes
+     */
+    @Override
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Loads the keys from a JWKS file and replaces the current keys.
+     *
+     * @param jwks the JWKS file
+     * @throws IOException if the file cannot be read or parsed. The current keys are kept.
+     */
+    public void load(Path jwks) throws IOException {
+        setKeys(JsonWebKeys.parse(Files.readAllBytes(jwks)));
+    }
+
+    public void setJwksPath(Path jwksPath) {
+        this.jwksPath = jwksPath;
+    }
+
+    /**
+     * Sets how often the JWKS file is checked for changes. Defaults to 10 seconds.
+     *
+     * @param reloadInterval the interval between checks
+     */
+    public void setReloadInterval(Duration reloadInterval) {
+        this.reloadInterval = reloadInterval;
+    }
+
+    private void reloadIfModified() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(jwksPath);
+            if (Objects.equals(modified, lastModified)) return;
+            load(jwksPath);
+            lastModified = modified;
+            LOG.info("Reloaded JWKS from {} ({} keys)", jwksPath, keys.size());
+        } catch (IOException e) {
+            LOG.warn("Failed to reload JWKS from {}. Keeping the current keys.", jwksPath, e);
+        }
+    }
+
+    @Override
+    protected ComponentLifecycle<JwtKeyRegistry> lifecycle() {
+        return new ComponentLifecycle<JwtKeyRegistry>() {
+            @Override
+            public void start(JwtKeyRegistry component) {
+                if (component.jwksPath == null) return;
+                try {
+                    FileTime modified = Files.getLastModifiedTime(component.jwksPath);
+                    component.load(component.jwksPath);
+                    component.lastModified = modified;
+                } catch (IOException e) {
+                    throw new MisconfigurationException("bouncr.INVALID_JWKS", component.jwksPath, e.getMessage());
+                }
+                long interval = component.reloadInterval.toMillis();
+                component.watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "jwks-watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                component.watcher.scheduleWithFixedDelay(component::reloadIfModified,
+                        interval, interval, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public void stop(JwtKeyRegistry component) {
+                if (component.watcher != null) {
+                    component.watcher.shutdownNow();
+                    component.watcher = null;
+                }
+                component.lastModified = null;
+            }
+        };
+    }
+}
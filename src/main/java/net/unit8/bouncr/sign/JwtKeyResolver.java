@@ -0,0 +1,23 @@
+package net.unit8.bouncr.sign;
+
+/**
+ * Selects the key for verifying a token from its header.
+ */
+@FunctionalInterface
+public interface JwtKeyResolver {
+    /**
+     * @param header the header of the token being verified
+     * @return the verification key, or null if no key matches
+     */
+    JwtKey resolve(JwtHeader header);
+
+    /**
+     * Returns a number that changes whenever the keys change, so that callers caching
+     * verification results know when to drop them.
+     *
+     * @return the generation of the keys, or 0 if they never change
+     */
+    default long getGeneration() {
+        return 0L;
+    }
+}
@@ -0,0 +1,26 @@
+package net.unit8.bouncr.sign;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * Reads the claims from the decoded payload of a verified token.
+ *
+ * Use it instead of a {@link com.fasterxml.jackson.core.type.TypeReference} to read
+ * the payload with a streaming parser, or to defer decoding.
+ *
+ * @param <T> the type of the claims
+ */
+@FunctionalInterface
+public interface JwtPayloadReader<T> {
+    /**
+     * @param mapper the object mapper of the {@link JsonWebToken} component
+     * @param json a buffer holding the payload JSON. It is not reused by the caller, so it may be retained.
+     * @param offset the start of the payload in the buffer
+     * @param length the length of the payload
+     * @return the claims
+     * @throws IOException if the payload cannot be read
+     */
+    T read(ObjectMapper mapper, byte[] json, int offset, int length) throws IOException;
+}
@@ -0,0 +1,58 @@
+package net.unit8.bouncr.sign;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.prng.SP800SecureRandomBuilder;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed set of DRBG instances, one of which is picked by the id of the current thread.
+ *
+ * A single SecureRandom serializes every signing thread on its lock. Spreading the threads
+ * over several instances removes most of that contention. Unlike a ThreadLocal, the number
+ * of instances does not grow with the number of threads, so it also suits virtual threads.
+ * Each instance is a Hash DRBG created on first use. Its entropy, both at instantiation and on reseed,
+ * and its nonce are drawn from the seed source.
+ */
+final class SecureRandomStripes {
+    private final SecureRandom seedSource;
+    private final AtomicReferenceArray<SecureRandom> stripes;
+    private final int mask;
+
+    /**
+     * @param seedSource the entropy source of the instances
+     * @param stripes the number of instances, rounded up to a power of two
+     */
+    SecureRandomStripes(SecureRandom seedSource, int stripes) {
+        int n = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.seedSource = seedSource;
+        this.stripes = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+    }
+
+    SecureRandom current() {
+        int i = (int) Thread.currentThread().threadId() & mask;
+        SecureRandom random = stripes.get(i);
+        if (random == null) {
+            random = newInstance();
+            if (!stripes.compareAndSet(i, null, random)) {
+                random = stripes.get(i);
+            }
+        }
+        return random;
+    }
+
+    int size() {
+        return stripes.length();
+    }
+
+    private SecureRandom newInstance() {
+        byte[] nonce = new byte[16];
+        seedSource.nextBytes(nonce);
+        return new SP800SecureRandomBuilder(seedSource, false)
+                .setSecurityStrength(256)
+                .setEntropyBitsRequired(256)
+                .buildHash(new SHA256Digest(), nonce, false);
+    }
+}
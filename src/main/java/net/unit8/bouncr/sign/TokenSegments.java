@@ -0,0 +1,84 @@
+package net.unit8.bouncr.sign;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The three segments of a compact JWS, located by scanning for the two dots.
+ *
+ * The token is held as ASCII bytes so that the signing input ({@code header.payload})
+ * can be fed to the Mac/Signature directly, and the payload and signature segments
+ * can be Base64url-decoded in place.
+ */
+final class TokenSegments {
+    final byte[] bytes;
+    final int headerEnd;
+    final int payloadEnd;
+
+    private TokenSegments(byte[] bytes, int headerEnd, int payloadEnd) {
+        this.bytes = bytes;
+        this.headerEnd = headerEnd;
+        this.payloadEnd = payloadEnd;
+    }
+
+    /**
+     * @return the segments, or null if the message does not contain three segments
+     */
+    static TokenSegments split(String message) {
+        int headerEnd = message.indexOf('.');
+        if (headerEnd < 0) return null;
+        int payloadEnd = message.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0) return null;
+        return new TokenSegments(message.getBytes(StandardCharsets.US_ASCII), headerEnd, payloadEnd);
+    }
+
+    int signingInputLength() {
+        return payloadEnd;
+    }
+
+    int payloadStart() {
+        return headerEnd + 1;
+    }
+
+    int signatureStart() {
+        return payloadEnd + 1;
+    }
+
+    byte[] decodeHeader() {
+        return Base64Url.decode(bytes, 0, headerEnd);
+    }
+
+    /**
+     * Decodes the payload in place. Must not be called before the signature is verified,
+     * because it overwrites the signing input.
+     *
+     * @return the length of the decoded payload, starting at {@link #payloadStart()}
+     * @throws IllegalArgumentException if the payload is not valid base64url
+     */
+    int decodePayloadInPlace() {
+        int len = Base64Url.decode(bytes, payloadStart(), payloadEnd, bytes, payloadStart());
+        if (len < 0) throw new IllegalArgumentException("Illegal base64url character or length in payload");
+        return len;
+    }
+
+    /**
+     * Decodes the signature into a buffer of exactly the expected signature length.
+     * The encoded length is checked first, so a signature of the wrong size is rejected
+     * without decoding.
+     *
+     * @return true if the signature was decoded and filled the buffer exactly
+     */
+    boolean decodeSignature(byte[] dst) {
+        int encodedLength = bytes.length - signatureStart();
+        if (encodedLength != (dst.length * 4 + 2) / 3) return false;
+        return Base64Url.decode(bytes, signatureStart(), bytes.length, dst, 0) == dst.length;
+    }
+
+    /**
+     * Decodes the signature in place.
+     *
+     * @return the length of the decoded signature starting at {@link #signatureStart()}, or -1 if it is malformed
+     */
+    int decodeSignatureInPlace() {
+        return Base64Url.decode(bytes, signatureStart(), bytes.length, bytes, signatureStart());
+    }
+}
@@ -0,0 +1,17 @@
+package net.unit8.bouncr.sign;
+
+/**
+ * Why a token was rejected.
+ */
+public enum VerificationFailure {
+    /** The token is not three base64url segments with a JSON header and payload. */
+    MALFORMED,
+    /** The algorithm is unknown, {@code none}, or not the one the key accepts. */
+    BAD_ALGORITHM,
+    /** No key is available for the token, e.g. an unknown {@code kid}. */
+    UNKNOWN_KEY,
+    /** The signature does not match. */
+    BAD_SIGNATURE,
+    /** The exp, nbf or iat claim is out of range. */
+    EXPIRED
+}
@@ -0,0 +1,185 @@
+package net.unit8.bouncr.sign;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * A token whose signature has been verified but whose payload has not been bound yet.
+ *
+ * Reading a single claim scans the top level of the payload once to index where each
+ * claim is, and then decodes only that claim. Binding the whole payload is left to
+ * {@link #as(Class)} and {@link #as(TypeReference)}.
+ */
+public final class VerifiedJwt {
+    private final JwtHeader header;
+    private final ObjectMapper mapper;
+    private final byte[] bytes;
+    private final int payloadOffset;
+    private final int payloadLength;
+
+    private Index index;
+
+    VerifiedJwt(JwtHeader header, ObjectMapper mapper, byte[] bytes, int payloadOffset, int payloadLength) {
+        this.header = header;
+        this.mapper = mapper;
+        this.bytes = bytes;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+    }
+
+    public JwtHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * @return a copy of the payload JSON
+     */
+    public byte[] getPayload() {
+        return Arrays.copyOfRange(bytes, payloadOffset, payloadOffset + payloadLength);
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int payloadOffset() {
+        return payloadOffset;
+    }
+
+    int payloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * @param name the claim name
+     * @return true if the payload has a top-level claim with the name
+     */
+    public boolean hasClaim(String name) {
+        return index().find(name) >= 0;
+    }
+
+    /**
+     * Decodes one top-level claim.
+     *
+     * @param name the claim name
+     * @return the claim as Jackson binds it to {@link Object}, or null if absent
+     */
+    public Object getClaim(String name) {
+        return getClaim(name, Object.class);
+    }
+
+    /**
+     * Decodes one top-level claim into the given type.
+     *
+     * @param name the claim name
+     * @param type the type of the claim
+     * @return the claim, or null if absent
+     */
+    public <T> T getClaim(String name, Class<T> type) {
+        Index index = index();
+        int i = index.find(name);
+        if (i < 0) return null;
+        try {
+            return mapper.readValue(bytes, index.starts[i], index.ends[i] - index.starts[i], type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Binds the whole payload.
+     */
+    public <T> T as(Class<T> type) {
+        try {
+            return mapper.readValue(bytes, payloadOffset, payloadLength, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Binds the whole payload.
+     */
+    public <T> T as(TypeReference<T> type) {
+        try {
+            return mapper.readValue(bytes, payloadOffset, payloadLength, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Index index() {
+        Index current = index;
+        if (current == null) {
+            try {
+                current = Index.scan(mapper, bytes, payloadOffset, payloadLength);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index = current;
+        }
+        return current;
+    }
+
+    /**
+     * The byte ranges of the top-level claims. Immutable, so it is safe to publish through a plain field.
+     */
+    private static final class Index {
+        private final String[] names;
+        private final int[] starts;
+        private final int[] ends;
+
+        private Index(String[] names, int[] starts, int[] ends) {
+            this.names = names;
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        static Index scan(ObjectMapper mapper, byte[] bytes, int offset, int length) throws IOException {
+            String[] names = new String[8];
+            int[] starts = new int[8];
+            int[] ends = new int[8];
+            int n = 0;
+            try (JsonParser parser = mapper.getFactory().createParser(bytes, offset, length)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return new Index(new String[0], new int[0], new int[0]);
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    // Byte offsets are relative to the start of the parsed range.
+                    int start = offset + (int) parser.currentTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    parser.finishToken();
+                    int end = offset + (int) parser.currentLocation().getByteOffset();
+                    if (n == names.length) {
+                        names = Arrays.copyOf(names, n * 2);
+                        starts = Arrays.copyOf(starts, n * 2);
+                        ends = Arrays.copyOf(ends, n * 2);
+                    }
+                    names[n] = name;
+                    starts[n] = start;
+                    ends[n] = end;
+                    n++;
+                }
+            }
+            return new Index(Arrays.copyOf(names, n), Arrays.copyOf(starts, n), Arrays.copyOf(ends, n));
+        }
+
+        /**
+         * @return the index of the last claim with the name, matching how a map binding resolves duplicates
+         */
+        int find(String name) {
+            for (int i = names.length - 1; i >= 0; i--) {
+                if (names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -56,6 +56,9 @@ public class AuthorizeControllerMethodMiddlewareTest {
         public void multiRole() {}
 
         public void noAnnotation() {}
+
+        @RolesAllowed({})
+        public void nobody() {}
     }
 
     private static Method method(String name) throws NoSuchMethodException {
@@ -150,4 +153,29 @@ public class AuthorizeControllerMethodMiddlewareTest {
         HttpResponse res = invoke(req);
         assertThat(res.getStatus()).isEqualTo(403);
     }
+
+    @Test
+    public void forbidsEveryoneWhenRolesAllowedIsEmpty() throws Exception {
+        RoutableRequest req = new RoutableRequest(method("nobody"), principalWith("admin"));
+        HttpResponse res = invoke(req);
+        assertThat(res.getStatus()).isEqualTo(403);
+    }
+
+    @Test
+    public void repeatedRequestsUseTheSameDecision() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertThat(invoke(new RoutableRequest(method("adminOnly"), principalWith("admin"))).getStatus()).isEqualTo(200);
+            assertThat(invoke(new RoutableRequest(method("adminOnly"), principalWith("read"))).getStatus()).isEqualTo(403);
+            assertThat(invoke(new RoutableRequest(method("noAnnotation"), null)).getStatus()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    public void metricsRecordDenials() throws Exception {
+        net.unit8.bouncr.sign.RecordingMetrics metrics = new net.unit8.bouncr.sign.RecordingMetrics();
+        middleware.setMetrics(metrics);
+        invoke(new RoutableRequest(method("adminOnly"), principalWith("admin")));
+        invoke(new RoutableRequest(method("adminOnly"), principalWith("read")));
+        assertThat(metrics.denials).containsExactly(method("adminOnly"));
+    }
 }
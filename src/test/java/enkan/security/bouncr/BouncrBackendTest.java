@@ -7,6 +7,10 @@ import enkan.exception.MisconfigurationException;
 import enkan.system.EnkanSystem;
 import net.unit8.bouncr.sign.JsonWebToken;
 import net.unit8.bouncr.sign.JwtHeader;
+import net.unit8.bouncr.sign.JwtKey;
+import net.unit8.bouncr.sign.JwtKeyRegistry;
+import net.unit8.bouncr.sign.RecordingMetrics;
+import net.unit8.bouncr.sign.VerificationFailure;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,9 +18,18 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -83,7 +96,7 @@ public class BouncrBackendTest {
         return backend;
     }
 
-    private BouncrBackend backendWithPublicKey(java.security.PublicKey publicKey) {
+    private BouncrBackend backendWithPublicKey(PublicKey publicKey) {
         BouncrBackend backend = new BouncrBackend();
         backend.setJwt(jwt);
         backend.setPublicKey(publicKey);
@@ -122,6 +135,19 @@ public class BouncrBackendTest {
         assertThat(result).containsEntry("sub", "kawasima");
     }
 
+    @Test
+    public void parseEcdsaToken() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("EC");
+        gen.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = gen.generateKeyPair();
+        JwtHeader header = new JwtHeader();
+        header.setAlg("ES256");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, keyPair.getPrivate());
+
+        BouncrBackend backend = backendWithPublicKey(keyPair.getPublic());
+        assertThat(backend.parse(requestWithCredential(token))).containsEntry("sub", "kawasima");
+    }
+
     @Test
     public void parseReturnsNullForWrongSignature() {
         byte[] key = "correct-key".getBytes(StandardCharsets.UTF_8);
@@ -146,6 +172,127 @@ public class BouncrBackendTest {
                 .isInstanceOf(MisconfigurationException.class);
     }
 
+    @Test
+    public void parseWithKeyResolverSelectsKeyByKid() throws Exception {
+        KeyPair first = generateKeyPair();
+        KeyPair second = generateKeyPair();
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        registry.setKeys(Map.of("k1", JwtKey.of(first.getPublic()), "k2", JwtKey.of(second.getPublic())));
+
+        JwtHeader header = new JwtHeader();
+        header.setAlg("RS256");
+        header.setKid("k2");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, second.getPrivate());
+
+        BouncrBackend backend = new BouncrBackend();
+        backend.setJwt(jwt);
+        backend.setKeyResolver(registry);
+        assertThat(backend.parse(requestWithCredential(token))).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void revokedKeyInvalidatesCachedCredentials() throws Exception {
+        KeyPair first = generateKeyPair();
+        KeyPair second = generateKeyPair();
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        registry.setKeys(Map.of("k1", JwtKey.of(first.getPublic()), "k2", JwtKey.of(second.getPublic())));
+
+        JwtHeader header = new JwtHeader();
+        header.setAlg("RS256");
+        header.setKid("k1");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, first.getPrivate());
+
+        BouncrBackend backend = new BouncrBackend();
+        backend.setJwt(jwt);
+        backend.setKeyResolver(registry);
+        assertThat(backend.parse(requestWithCredential(token))).containsEntry("sub", "kawasima");
+        assertThat(backend.parse(requestWithCredential(token))).containsEntry("sub", "kawasima");
+
+        registry.setKeys(Map.of("k2", JwtKey.of(second.getPublic())));
+        assertThat(backend.parse(requestWithCredential(token))).isNull();
+    }
+
+    @Test
+    public void parseThrowsWhenKeyAndKeyResolverConfigured() {
+        BouncrBackend backend = backendWithKey("secret".getBytes(StandardCharsets.UTF_8));
+        backend.setKeyResolver(new JwtKeyRegistry());
+        assertThatThrownBy(() -> backend.parse(requestWithoutCredential()))
+                .isInstanceOf(MisconfigurationException.class);
+    }
+
+    @Test
+    public void authenticateParsedCredentialDecodesProfilesLazily() {
+        byte[] key = "streaming-key".getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("uid", 42);
+        claims.put("sub", "kawasima");
+        claims.put("permissions", List.of("read", "write"));
+        claims.put("email", "test@example.com");
+        BouncrBackend backend = backendWithKey(key);
+
+        Map<String, Object> parsed = backend.parse(requestWithCredential(signHmac(claims, key)));
+        UserPermissionPrincipal principal = (UserPermissionPrincipal) backend.authenticate(requestWithoutCredential(), parsed);
+        assertThat(principal.getId()).isEqualTo(42L);
+        assertThat(principal.getName()).isEqualTo("kawasima");
+        assertThat(principal.getPermissions()).containsExactlyInAnyOrder("read", "write");
+        assertThat(principal.getProfiles()).containsOnlyKeys("email").containsEntry("email", "test@example.com");
+    }
+
+    @Test
+    public void authenticateHonorsChangesToParsedClaims() {
+        byte[] key = "streaming-key".getBytes(StandardCharsets.UTF_8);
+        BouncrBackend backend = backendWithKey(key);
+        Map<String, Object> parsed = backend.parse(requestWithCredential(
+                signHmac(Map.of("sub", "kawasima", "permissions", List.of("read")), key)));
+        parsed.put("permissions", List.of("admin"));
+
+        UserPermissionPrincipal principal = (UserPermissionPrincipal) backend.authenticate(requestWithoutCredential(), parsed);
+        assertThat(principal.getPermissions()).containsExactly("admin");
+        assertThat(principal.getProfiles()).isEmpty();
+    }
+
+    // --- verified-token cache ---
+
+    @Test
+    public void cachedParseReturnsIndependentCopies() {
+        byte[] key = "cache-test-key".getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("uid", 7);
+        claims.put("sub", "kawasima");
+        claims.put("permissions", List.of("read"));
+        String token = signHmac(claims, key);
+
+        BouncrBackend backend = backendWithKey(key);
+        Map<String, Object> first = backend.parse(requestWithCredential(token));
+        backend.authenticate(requestWithCredential(token), first);
+
+        Map<String, Object> second = backend.parse(requestWithCredential(token));
+        assertThat(second).containsEntry("sub", "kawasima").containsKeys("uid", "permissions");
+        assertThat(second).isNotSameAs(first);
+    }
+
+    @Test
+    public void changingKeyInvalidatesCache() {
+        byte[] key = "cache-test-key".getBytes(StandardCharsets.UTF_8);
+        String token = signHmac(Map.of("sub", "kawasima"), key);
+
+        BouncrBackend backend = backendWithKey(key);
+        assertThat(backend.parse(requestWithCredential(token))).isNotNull();
+
+        backend.setKey("another-key".getBytes(StandardCharsets.UTF_8));
+        assertThat(backend.parse(requestWithCredential(token))).isNull();
+    }
+
+    @Test
+    public void parseWorksWithCacheDisabled() {
+        byte[] key = "cache-test-key".getBytes(StandardCharsets.UTF_8);
+        String token = signHmac(Map.of("sub", "kawasima"), key);
+
+        BouncrBackend backend = backendWithKey(key);
+        backend.setCacheMaxSize(0);
+        assertThat(backend.parse(requestWithCredential(token))).containsEntry("sub", "kawasima");
+    }
+
     // --- authenticate() ---
 
     @Test
@@ -202,7 +349,7 @@ public class BouncrBackendTest {
         Map<String, Object> data = new HashMap<>();
         data.put("uid", "1");
         data.put("sub", "kawasima");
-        data.put("permissions", new java.util.ArrayList<>(java.util.Arrays.asList("read", null, "write")));
+        data.put("permissions", new ArrayList<>(Arrays.asList("read", null, "write")));
 
         UserPermissionPrincipal principal = (UserPermissionPrincipal) backend.authenticate(requestWithoutCredential(), data);
         assertThat(principal.getPermissions()).containsExactlyInAnyOrder("read", "write");
@@ -242,4 +389,285 @@ public class BouncrBackendTest {
         assertThat(principal.getName()).isEqualTo("testuser");
         assertThat(principal.hasPermission("admin")).isTrue();
     }
+
+    @Test
+    public void parseRejectsExpiredCredential() {
+        byte[] key = "expiry-key".getBytes(StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis() / 1000L;
+        BouncrBackend backend = backendWithKey(key);
+        assertThat(backend.parse(requestWithCredential(signHmac(Map.of("sub", "kawasima", "exp", now - 10), key)))).isNull();
+        assertThat(backend.parse(requestWithCredential(signHmac(Map.of("sub", "kawasima", "exp", now + 60), key))))
+                .containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void cachedCredentialIsDroppedAtMaxAge() throws Exception {
+        byte[] key = "expiry-key".getBytes(StandardCharsets.UTF_8);
+        jwt.setMaxAge(Duration.ofSeconds(2));
+        long now = System.currentTimeMillis() / 1000L;
+        String token = signHmac(Map.of("sub", "kawasima", "iat", now - 1, "exp", now + 60), key);
+        BouncrBackend backend = backendWithKey(key);
+        assertThat(backend.parse(requestWithCredential(token))).containsEntry("sub", "kawasima");
+
+        Thread.sleep(2_100);
+        assertThat(backend.parse(requestWithCredential(token))).isNull();
+    }
+
+    // --- negative cache ---
+
+    @Test
+    public void repeatedInvalidCredentialIsRejectedFromNegativeCache() {
+        byte[] key = "negative-cache-key".getBytes(StandardCharsets.UTF_8);
+        String forged = signHmac(Map.of("sub", "kawasima"), "another-key".getBytes(StandardCharsets.UTF_8));
+        BouncrBackend backend = backendWithKey(key);
+
+        assertThat(backend.parse(requestWithCredential(forged))).isNull();
+        assertThat(backend.getNegativeCacheHitCount()).isZero();
+        assertThat(backend.parse(requestWithCredential(forged))).isNull();
+        assertThat(backend.parse(requestWithCredential(forged))).isNull();
+        assertThat(backend.getNegativeCacheHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void negativeCacheEvictsOldestRejection() {
+        byte[] key = "negative-cache-key".getBytes(StandardCharsets.UTF_8);
+        byte[] wrongKey = "another-key".getBytes(StandardCharsets.UTF_8);
+        BouncrBackend backend = backendWithKey(key);
+        backend.setNegativeCacheMaxSize(2);
+
+        for (int i = 0; i < 3; i++) {
+            backend.parse(requestWithCredential(signHmac(Map.of("sub", "user" + i), wrongKey)));
+        }
+        assertThat(backend.getNegativeCacheEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void rejectionRememberedAgainAfterTtlIsNotEvicted() throws Exception {
+        byte[] key = "negative-cache-key".getBytes(StandardCharsets.UTF_8);
+        byte[] wrongKey = "another-key".getBytes(StandardCharsets.UTF_8);
+        String forged = signHmac(Map.of("sub", "kawasima"), wrongKey);
+        BouncrBackend backend = backendWithKey(key);
+        backend.setNegativeCacheMaxSize(2);
+        backend.setNegativeCacheTtl(Duration.ofMillis(500));
+
+        assertThat(backend.parse(requestWithCredential(forged))).isNull();
+        Thread.sleep(600);
+        assertThat(backend.parse(requestWithCredential(forged))).isNull();
+        assertThat(backend.parse(requestWithCredential(signHmac(Map.of("sub", "other"), wrongKey)))).isNull();
+        assertThat(backend.parse(requestWithCredential(forged))).isNull();
+
+        assertThat(backend.getNegativeCacheEvictionCount()).isZero();
+        assertThat(backend.getNegativeCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void changingKeyClearsNegativeCache() {
+        byte[] key = "negative-cache-key".getBytes(StandardCharsets.UTF_8);
+        String token = signHmac(Map.of("sub", "kawasima"), key);
+        BouncrBackend backend = backendWithKey("old-key".getBytes(StandardCharsets.UTF_8));
+        assertThat(backend.parse(requestWithCredential(token))).isNull();
+
+        backend.setKey(key);
+        assertThat(backend.parse(requestWithCredential(token))).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void parseWorksWithBothCachesDisabled() {
+        byte[] key = "negative-cache-key".getBytes(StandardCharsets.UTF_8);
+        BouncrBackend backend = backendWithKey(key);
+        backend.setCacheMaxSize(0);
+        backend.setNegativeCacheTtl(Duration.ZERO);
+        String forged = signHmac(Map.of("sub", "kawasima"), "another-key".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(backend.parse(requestWithCredential(forged))).isNull();
+        assertThat(backend.parse(requestWithCredential(forged))).isNull();
+        assertThat(backend.getNegativeCacheHitCount()).isZero();
+        assertThat(backend.parse(requestWithCredential(signHmac(Map.of("sub", "kawasima"), key)))).isNotNull();
+    }
+
+    @Test
+    public void metricsRecordCacheAccesses() {
+        byte[] key = "metrics-key".getBytes(StandardCharsets.UTF_8);
+        RecordingMetrics metrics = new RecordingMetrics();
+        BouncrBackend backend = backendWithKey(key);
+        backend.setMetrics(metrics);
+        String token = signHmac(Map.of("sub", "kawasima"), key);
+        String forged = signHmac(Map.of("sub", "kawasima"), "another-key".getBytes(StandardCharsets.UTF_8));
+
+        backend.parse(requestWithCredential(token));
+        backend.parse(requestWithCredential(token));
+        backend.parse(requestWithCredential(forged));
+        backend.parse(requestWithCredential(forged));
+        assertThat(metrics.cacheAccesses).containsExactly(
+                "credential:miss", "negative:miss",
+                "credential:hit",
+                "credential:miss", "negative:miss",
+                "credential:miss", "negative:hit");
+    }
+
+    // --- per-request memo ---
+
+    @Test
+    public void secondParseOfSameRequestSkipsVerification() {
+        byte[] key = "memo-key".getBytes(StandardCharsets.UTF_8);
+        RecordingMetrics metrics = new RecordingMetrics();
+        BouncrBackend backend = backendWithKey(key);
+        backend.setMetrics(metrics);
+        HttpRequest request = requestWithCredential(signHmac(Map.of("sub", "kawasima", "uid", "1"), key));
+
+        Map<String, Object> first = backend.parse(request);
+        Map<String, Object> second = backend.parse(request);
+        assertThat(metrics.cacheAccesses).containsExactly("credential:miss", "negative:miss");
+        assertThat(second).isNotSameAs(first).containsEntry("sub", "kawasima");
+
+        // authenticate() of the first parse does not affect the second
+        backend.authenticate(request, first);
+        assertThat(backend.parse(request)).containsEntry("uid", "1");
+    }
+
+    @Test
+    public void rejectionIsRememberedForTheRequest() {
+        byte[] key = "memo-key".getBytes(StandardCharsets.UTF_8);
+        BouncrBackend backend = backendWithKey(key);
+        backend.setNegativeCacheMaxSize(0);
+        backend.setCacheMaxSize(0);
+        HttpRequest request = requestWithCredential(signHmac(Map.of("sub", "kawasima"),
+                "another-key".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(backend.parse(request)).isNull();
+        assertThat((Object) request.getExtension(BouncrBackend.VERIFIED_CREDENTIAL)).isNotNull();
+        assertThat(backend.parse(request)).isNull();
+    }
+
+    @Test
+    public void memoIsNotSharedBetweenBackendsOrCredentials() {
+        byte[] key = "memo-key".getBytes(StandardCharsets.UTF_8);
+        String token = signHmac(Map.of("sub", "kawasima"), key);
+        HttpRequest request = requestWithCredential(token);
+
+        assertThat(backendWithKey("another-key".getBytes(StandardCharsets.UTF_8)).parse(request)).isNull();
+        assertThat(backendWithKey(key).parse(request)).containsEntry("sub", "kawasima");
+
+        BouncrBackend backend = backendWithKey(key);
+        backend.parse(request);
+        request.setHeaders(Headers.of("x-bouncr-credential", signHmac(Map.of("sub", "other"), key)));
+        assertThat(backend.parse(request)).containsEntry("sub", "other");
+    }
+
+    // --- single flight ---
+
+    @Test
+    public void concurrentParsesOfFreshCredentialVerifyOnce() throws Exception {
+        JwtKey key = JwtKey.hmac("single-flight-key".getBytes(StandardCharsets.UTF_8));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger resolutions = new AtomicInteger();
+        BouncrBackend backend = new BouncrBackend();
+        backend.setJwt(jwt);
+        backend.setKeyResolver(header -> {
+            resolutions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return key;
+        });
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        header.setKid("k1");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, key);
+
+        CompletableFuture<Map<String, Object>> first = CompletableFuture.supplyAsync(() -> backend.parse(requestWithCredential(token)));
+        started.await();
+        CompletableFuture<Map<String, Object>> second = CompletableFuture.supplyAsync(() -> backend.parse(requestWithCredential(token)));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (backend.getCoalescedVerificationCount() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS)).containsEntry("sub", "kawasima");
+        assertThat(second.get(10, TimeUnit.SECONDS)).containsEntry("sub", "kawasima");
+        assertThat(resolutions).hasValue(1);
+        assertThat(backend.getCoalescedVerificationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void singleFlightCanBeDisabled() {
+        byte[] key = "single-flight-key".getBytes(StandardCharsets.UTF_8);
+        BouncrBackend backend = backendWithKey(key);
+        backend.setSingleFlightTimeout(Duration.ZERO);
+        backend.setCacheMaxSize(0);
+        backend.setNegativeCacheMaxSize(0);
+        assertThat(backend.parse(requestWithCredential(signHmac(Map.of("sub", "kawasima"), key))))
+                .containsEntry("sub", "kawasima");
+        assertThat(backend.getCoalescedVerificationCount()).isZero();
+    }
+
+    // --- pinned algorithm ---
+
+    @Test
+    public void pinnedAlgorithmRejectsOtherAlgorithms() {
+        byte[] key = "pinned-key".getBytes(StandardCharsets.UTF_8);
+        BouncrBackend backend = backendWithKey(key);
+        backend.setAlgorithm("HS384");
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS384");
+        String hs384 = jwt.sign(Map.of("sub", "kawasima"), header, key);
+
+        assertThat(backend.parse(requestWithCredential(signHmac(Map.of("sub", "kawasima"), key)))).isNull();
+        assertThat(backend.parse(requestWithCredential(hs384))).containsEntry("sub", "kawasima");
+
+        backend.setAlgorithm(null);
+        assertThat(backend.parse(requestWithCredential(signHmac(Map.of("sub", "kawasima"), key)))).isNotNull();
+    }
+
+    // --- precheck ---
+
+    @Test
+    public void implausibleCredentialsAreRejectedBeforeVerification() {
+        byte[] key = "precheck-key".getBytes(StandardCharsets.UTF_8);
+        RecordingMetrics metrics = new RecordingMetrics();
+        BouncrBackend backend = backendWithKey(key);
+        backend.setMetrics(metrics);
+        backend.setMaxCredentialLength(256);
+        String token = signHmac(Map.of("sub", "kawasima"), key);
+        Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+        String none = enc.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + enc.encodeToString("{\"sub\":\"attacker\"}".getBytes(StandardCharsets.UTF_8)) + ".";
+
+        assertThat(backend.parse(requestWithCredential("x".repeat(257)))).isNull();
+        assertThat(backend.parse(requestWithCredential("not a token"))).isNull();
+        assertThat(backend.parse(requestWithCredential(none))).isNull();
+        assertThat(backend.parse(requestWithCredential(token.substring(0, token.length() - 2)))).isNull();
+        assertThat(metrics.failures).containsExactly(
+                VerificationFailure.MALFORMED, VerificationFailure.MALFORMED,
+                VerificationFailure.BAD_ALGORITHM, VerificationFailure.BAD_SIGNATURE);
+        assertThat(metrics.cacheAccesses).isEmpty();
+
+        assertThat(backend.parse(requestWithCredential(token))).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void credentialsWithANonObjectHeaderAreRejected() {
+        BouncrBackend backend = backendWithKey("precheck-key".getBytes(StandardCharsets.UTF_8));
+        // null and [1] as the header
+        assertThat(backend.parse(requestWithCredential("bnVsbA.e30.AAAA"))).isNull();
+        assertThat(backend.parse(requestWithCredential("WzFd.e30.AAAA"))).isNull();
+    }
+
+    @Test
+    public void precheckCanBeDisabled() {
+        byte[] key = "precheck-key".getBytes(StandardCharsets.UTF_8);
+        BouncrBackend backend = backendWithKey(key);
+        backend.setPrecheck(false);
+        Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+        String none = enc.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + enc.encodeToString("{\"sub\":\"attacker\"}".getBytes(StandardCharsets.UTF_8)) + ".";
+
+        assertThatThrownBy(() -> backend.parse(requestWithCredential(none)))
+                .isInstanceOf(MisconfigurationException.class);
+    }
 }
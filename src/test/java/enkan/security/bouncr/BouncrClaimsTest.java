@@ -0,0 +1,93 @@
+package enkan.security.bouncr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BouncrClaimsTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static BouncrClaims.Payload read(String json) throws IOException {
+        byte[] bytes = ("xx" + json).getBytes(StandardCharsets.UTF_8);
+        return BouncrClaims.Payload.read(MAPPER, bytes, 2, bytes.length - 2);
+    }
+
+    @Test
+    public void readsKnownClaimsWithoutDecodingTheRest() throws IOException {
+        BouncrClaims.Payload payload = read(
+                "{\"uid\":7,\"sub\":\"kawasima\",\"permissions\":[\"read\",null,1,true],\"exp\":1700000000,"
+                        + "\"email\":\"test@example.com\",\"nested\":{\"a\":[1,2]}}");
+        assertThat(payload.getUid()).isEqualTo("7");
+        assertThat(payload.getSub()).isEqualTo("kawasima");
+        assertThat(payload.getPermissions()).containsExactly("read", "1", "true");
+        assertThat(payload.getExpiresAt()).isEqualTo(1_700_000_000_000L);
+        assertThat(payload.isRegular()).isTrue();
+    }
+
+    @Test
+    public void missingClaimsHaveDefaults() throws IOException {
+        BouncrClaims.Payload payload = read("{}");
+        assertThat(payload.getUid()).isNull();
+        assertThat(payload.getSub()).isNull();
+        assertThat(payload.getPermissions()).isEmpty();
+        assertThat(payload.getExpiresAt()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void permissionsThatAreNotAnArrayAreIgnored() throws IOException {
+        BouncrClaims.Payload payload = read("{\"permissions\":\"read\"}");
+        assertThat(payload.getPermissions()).isEmpty();
+        assertThat(payload.isRegular()).isTrue();
+    }
+
+    @Test
+    public void unusualShapesAreLeftToTheMapConversion() throws IOException {
+        assertThat(read("{\"sub\":1}").isRegular()).isFalse();
+        assertThat(read("{\"uid\":{\"a\":1}}").isRegular()).isFalse();
+        assertThat(read("{\"permissions\":[{\"a\":1}]}").isRegular()).isFalse();
+    }
+
+    @Test
+    public void nonObjectPayloadIsRejected() throws IOException {
+        assertThatThrownBy(() -> read("[1]")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> read("{\"uid\":")).isInstanceOf(IOException.class);
+        assertThat(read("null")).isNull();
+    }
+
+    @Test
+    public void mapViewIsMutableAndIndependent() throws IOException {
+        BouncrClaims.Payload payload = read("{\"sub\":\"kawasima\",\"email\":\"test@example.com\"}");
+        BouncrClaims first = new BouncrClaims(payload);
+        BouncrClaims second = new BouncrClaims(payload);
+        assertThat(first.isUntouched()).isTrue();
+
+        assertThat(first.remove("sub")).isEqualTo("kawasima");
+        assertThat(first.isUntouched()).isFalse();
+        assertThat(first).containsOnlyKeys("email");
+        assertThat(second).containsEntry("sub", "kawasima").containsEntry("email", "test@example.com");
+        assertThat(second).isEqualTo(Map.of("sub", "kawasima", "email", "test@example.com"));
+    }
+
+    @Test
+    public void profilesExcludeKnownClaims() throws Exception {
+        BouncrClaims.Payload payload = read("{\"uid\":1,\"sub\":\"kawasima\",\"permissions\":[],\"exp\":1,\"email\":\"e\"}");
+        BouncrClaims.Profiles profiles = new BouncrClaims.Profiles(payload);
+        assertThat(profiles).containsOnlyKeys("exp", "email");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(profiles);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertThat(in.readObject()).isInstanceOf(HashMap.class).isEqualTo(profiles);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package enkan.security.bouncr;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CredentialCacheTest {
+
+    @Test
+    public void returnsCachedValue() {
+        CredentialCache<String> cache = new CredentialCache<>(10, 1000L);
+        cache.put(CredentialDigest.of("token"), "claims", Long.MAX_VALUE, 0L);
+        assertThat(cache.get(CredentialDigest.of("token"), 10L)).isEqualTo("claims");
+        assertThat(cache.get(CredentialDigest.of("other"), 10L)).isNull();
+    }
+
+    @Test
+    public void entryExpiresAfterTtl() {
+        CredentialCache<String> cache = new CredentialCache<>(10, 1000L);
+        cache.put(CredentialDigest.of("token"), "claims", Long.MAX_VALUE, 0L);
+        assertThat(cache.get(CredentialDigest.of("token"), 1000L)).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void entryNeverOutlivesGivenExpiry() {
+        CredentialCache<String> cache = new CredentialCache<>(10, 1000L);
+        cache.put(CredentialDigest.of("token"), "claims", 500L, 0L);
+        assertThat(cache.get(CredentialDigest.of("token"), 499L)).isEqualTo("claims");
+        assertThat(cache.get(CredentialDigest.of("token"), 500L)).isNull();
+    }
+
+    @Test
+    public void alreadyExpiredValueIsNotCached() {
+        CredentialCache<String> cache = new CredentialCache<>(10, 1000L);
+        cache.put(CredentialDigest.of("token"), "claims", 100L, 200L);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void evictsOldestEntryWhenFull() {
+        CredentialCache<String> cache = new CredentialCache<>(2, 1000L);
+        cache.put(CredentialDigest.of("a"), "A", Long.MAX_VALUE, 0L);
+        cache.put(CredentialDigest.of("b"), "B", Long.MAX_VALUE, 0L);
+        cache.put(CredentialDigest.of("c"), "C", Long.MAX_VALUE, 0L);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(CredentialDigest.of("a"), 0L)).isNull();
+        assertThat(cache.get(CredentialDigest.of("b"), 0L)).isEqualTo("B");
+        assertThat(cache.get(CredentialDigest.of("c"), 0L)).isEqualTo("C");
+    }
+
+    @Test
+    public void reinsertedEntrySurvivesItsExpiredPredecessor() {
+        CredentialCache<String> cache = new CredentialCache<>(2, 1000L);
+        cache.put(CredentialDigest.of("a"), "A1", Long.MAX_VALUE, 0L);
+        assertThat(cache.get(CredentialDigest.of("a"), 1000L)).isNull();
+        cache.put(CredentialDigest.of("a"), "A2", Long.MAX_VALUE, 1000L);
+        cache.put(CredentialDigest.of("b"), "B", Long.MAX_VALUE, 1000L);
+
+        assertThat(cache.get(CredentialDigest.of("a"), 1000L)).isEqualTo("A2");
+        assertThat(cache.get(CredentialDigest.of("b"), 1000L)).isEqualTo("B");
+        assertThat(cache.getEvictionCount()).isZero();
+
+        cache.put(CredentialDigest.of("c"), "C", Long.MAX_VALUE, 1000L);
+        assertThat(cache.get(CredentialDigest.of("a"), 1000L)).isNull();
+        assertThat(cache.get(CredentialDigest.of("b"), 1000L)).isEqualTo("B");
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void countsHitsMissesAndEvictions() {
+        CredentialCache<String> cache = new CredentialCache<>(1, 1000L);
+        cache.put(CredentialDigest.of("a"), "A", Long.MAX_VALUE, 0L);
+        cache.get(CredentialDigest.of("a"), 0L);
+        cache.get(CredentialDigest.of("b"), 0L);
+        cache.get(CredentialDigest.of("a"), 1000L);
+        cache.put(CredentialDigest.of("b"), "B", Long.MAX_VALUE, 0L);
+        cache.put(CredentialDigest.of("c"), "C", Long.MAX_VALUE, 0L);
+
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,92 @@
+package enkan.security.bouncr;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PermissionSetTest {
+
+    @Test
+    public void containsInternedPermissions() {
+        PermissionRegistry registry = new PermissionRegistry(16);
+        PermissionSet set = PermissionSet.of(registry, List.of("read", "write"));
+        assertThat(set).containsExactlyInAnyOrder("read", "write");
+        assertThat(set.contains("read")).isTrue();
+        assertThat(set.contains("delete")).isFalse();
+        assertThat(set.contains(1)).isFalse();
+        assertThat(set).hasSize(2);
+    }
+
+    @Test
+    public void ignoresNullsAndConvertsElementsToString() {
+        PermissionSet set = PermissionSet.of(new PermissionRegistry(16), Arrays.asList("read", null, 42));
+        assertThat(set).containsExactlyInAnyOrder("read", "42");
+    }
+
+    @Test
+    public void equalsOtherSetsWithTheSameNames() {
+        PermissionSet set = PermissionSet.of(new PermissionRegistry(16), List.of("read", "write"));
+        assertThat(set).isEqualTo(Set.of("write", "read"));
+        assertThat(set.hashCode()).isEqualTo(new HashSet<>(List.of("read", "write")).hashCode());
+    }
+
+    @Test
+    public void keepsPermissionsBeyondRegistryCapacityByName() {
+        PermissionRegistry registry = new PermissionRegistry(2);
+        PermissionSet set = PermissionSet.of(registry, List.of("a", "b", "c", "d"));
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(set).containsExactlyInAnyOrder("a", "b", "c", "d");
+        assertThat(set.contains("d")).isTrue();
+        assertThat(set.contains("e")).isFalse();
+    }
+
+    @Test
+    public void spansMultipleWords() {
+        PermissionRegistry registry = new PermissionRegistry(1024);
+        List<String> names = new java.util.ArrayList<>();
+        for (int i = 0; i < 200; i++) names.add("perm" + i);
+        PermissionSet set = PermissionSet.of(registry, names);
+        assertThat(set).hasSize(200).containsAll(names);
+        assertThat(set.containsAll(PermissionSet.of(registry, List.of("perm0", "perm199")))).isTrue();
+        assertThat(set.containsAll(PermissionSet.of(registry, List.of("perm0", "other")))).isFalse();
+    }
+
+    @Test
+    public void containsAnyAndAll() {
+        PermissionRegistry registry = new PermissionRegistry(16);
+        PermissionSet set = PermissionSet.of(registry, List.of("read", "write"));
+        assertThat(set.containsAny(PermissionSet.of(registry, List.of("admin", "write")))).isTrue();
+        assertThat(set.containsAny(PermissionSet.of(registry, List.of("admin")))).isFalse();
+        assertThat(set.containsAll(PermissionSet.of(registry, List.of("read", "write")))).isTrue();
+        assertThat(set.containsAll(PermissionSet.of(registry, List.of("read", "admin")))).isFalse();
+        assertThat(set.containsAny(PermissionSet.of(new PermissionRegistry(16), List.of("read")))).isTrue();
+    }
+
+    @Test
+    public void isImmutable() {
+        PermissionSet set = PermissionSet.of(new PermissionRegistry(16), List.of("read"));
+        assertThatThrownBy(() -> set.add("write")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> set.remove("read")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void serializesByName() throws Exception {
+        PermissionSet set = PermissionSet.of(new PermissionRegistry(16), List.of("read", "write"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(set);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Object restored = in.readObject();
+            assertThat(restored).isInstanceOf(PermissionSet.class);
+            assertThat((PermissionSet) restored).containsExactlyInAnyOrder("read", "write");
+        }
+    }
+}
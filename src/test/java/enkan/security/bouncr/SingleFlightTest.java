@@ -0,0 +1,95 @@
+package enkan.security.bouncr;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTest {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    /** The first run blocks until released, later runs return at once. */
+    private Supplier<String> computation(String result) {
+        return () -> {
+            if (runs.incrementAndGet() == 1) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return result;
+        };
+    }
+
+    private static void awaitCoalesced(SingleFlight<?, ?> flight, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (flight.getCoalescedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void concurrentCallersShareOneComputation() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(10).toNanos());
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.run("k", computation("v")));
+        started.await();
+        CompletableFuture<String> follower1 = CompletableFuture.supplyAsync(() -> flight.run("k", computation("w")));
+        CompletableFuture<String> follower2 = CompletableFuture.supplyAsync(() -> flight.run("k", computation("w")));
+        awaitCoalesced(flight, 2);
+        release.countDown();
+
+        assertThat(leader.get(10, TimeUnit.SECONDS)).isEqualTo("v");
+        assertThat(follower1.get(10, TimeUnit.SECONDS)).isEqualTo("v");
+        assertThat(follower2.get(10, TimeUnit.SECONDS)).isEqualTo("v");
+        assertThat(runs).hasValue(1);
+        assertThat(flight.getCoalescedCount()).isEqualTo(2);
+        assertThat(flight.getTimeoutCount()).isZero();
+    }
+
+    @Test
+    public void callerRunsItselfAfterTimeout() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofMillis(20).toNanos());
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.run("k", computation("v")));
+        started.await();
+        try {
+            assertThat(flight.run("k", computation("w"))).isEqualTo("w");
+            assertThat(flight.getTimeoutCount()).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+        assertThat(leader.get(10, TimeUnit.SECONDS)).isEqualTo("v");
+    }
+
+    @Test
+    public void failureIsSharedAndKeyIsReleased() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(10).toNanos());
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.run("k", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("broken");
+        }));
+        started.await();
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> flight.run("k", () -> "w"));
+        awaitCoalesced(flight, 1);
+        release.countDown();
+
+        assertThatThrownBy(leader::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(follower::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(flight.run("k", () -> "again")).isEqualTo("again");
+    }
+}
@@ -59,6 +59,15 @@ public class UserPermissionPrincipalTest {
         assertThat(p.getPermissions()).containsExactlyInAnyOrder("read", "write");
     }
 
+    @Test
+    public void getPermissionsBackedByPermissionSetIsMutable() {
+        UserPermissionPrincipal p = principal(PermissionSet.of("read"));
+        Set<String> perms = p.getPermissions();
+        perms.add("write");
+        assertThat(perms).containsExactlyInAnyOrder("read", "write");
+        assertThat(p.hasPermission("write")).isFalse();
+    }
+
     @Test
     public void getProfiles() {
         Map<String, Object> profiles = new HashMap<>();
@@ -74,4 +83,22 @@ public class UserPermissionPrincipalTest {
         UserPermissionPrincipal p = new UserPermissionPrincipal(null, "user", Map.of(), Set.of());
         assertThat(p.getId()).isNull();
     }
+
+    @Test
+    public void hasAnyAndAllPermissions() {
+        UserPermissionPrincipal p = principal(Set.of("read", "write"));
+        assertThat(p.hasAnyPermission("admin", "write")).isTrue();
+        assertThat(p.hasAnyPermission("admin")).isFalse();
+        assertThat(p.hasAllPermissions("read", "write")).isTrue();
+        assertThat(p.hasAllPermissions("read", "admin")).isFalse();
+    }
+
+    @Test
+    public void hasAnyAndAllPermissionsWithPermissionSet() {
+        UserPermissionPrincipal p = principal(PermissionSet.of("read", "write"));
+        assertThat(p.hasPermission("read")).isTrue();
+        assertThat(p.hasAnyPermission(PermissionSet.of("admin", "write"))).isTrue();
+        assertThat(p.hasAllPermissions(PermissionSet.of("read", "admin"))).isFalse();
+        assertThat(principal(Set.of("read")).hasAllPermissions(PermissionSet.of("read"))).isTrue();
+    }
 }
@@ -0,0 +1,56 @@
+package net.unit8.bouncr.sign;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class Base64UrlTest {
+
+    @Test
+    public void decodesLikeJdkDecoderForAllLengths() {
+        Random random = new Random(42);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        for (int n = 0; n < 200; n++) {
+            byte[] data = new byte[n];
+            random.nextBytes(data);
+            byte[] encoded = encoder.encode(data);
+            assertThat(Base64Url.decode(encoded, 0, encoded.length)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void decodesPaddedInput() {
+        byte[] encoded = Base64.getUrlEncoder().encode("ab".getBytes(StandardCharsets.US_ASCII));
+        assertThat(Base64Url.decode(encoded, 0, encoded.length)).isEqualTo("ab".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void decodesRangeInPlace() {
+        byte[] token = "xx.eyJzdWIiOiJrYXdhc2ltYSJ9.yy".getBytes(StandardCharsets.US_ASCII);
+        int len = Base64Url.decode(token, 3, 27, token, 3);
+        assertThat(new String(token, 3, len, StandardCharsets.US_ASCII)).isEqualTo("{\"sub\":\"kawasima\"}");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"a", "ab+/", "ab.c", "ab=c", "abc==", "ab=", "éabc"})
+    public void rejectsInvalidInput(String input) {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        assertThat(Base64Url.decode(bytes, 0, bytes.length, new byte[bytes.length], 0)).isEqualTo(-1);
+        assertThatThrownBy(() -> Base64Url.decode(bytes, 0, bytes.length))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rejectsNonCanonicalTrailingBits() {
+        // "QR" has non-zero bits after the single decoded byte
+        byte[] bytes = "QR".getBytes(StandardCharsets.US_ASCII);
+        assertThat(Base64Url.decode(bytes, 0, bytes.length, new byte[2], 0)).isEqualTo(-1);
+    }
+}
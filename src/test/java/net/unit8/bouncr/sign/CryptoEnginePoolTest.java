@@ -0,0 +1,69 @@
+package net.unit8.bouncr.sign;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Security;
+import java.security.Signature;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CryptoEnginePoolTest {
+    static {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private final SecretKeySpec key = new SecretKeySpec("secret".getBytes(StandardCharsets.UTF_8), "HMAC");
+
+    @Test
+    public void returnedMacIsReused() throws Exception {
+        CryptoEnginePool pool = new CryptoEnginePool(2);
+        CryptoEnginePool.PooledMac mac = pool.borrowMac("HmacSHA256", key);
+        pool.returnMac("HmacSHA256", key, mac);
+
+        assertThat(pool.borrowMac("HmacSHA256", key)).isSameAs(mac);
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+        assertThat(pool.getReusedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void macIsResetWhenReturned() throws Exception {
+        CryptoEnginePool pool = new CryptoEnginePool(2);
+        CryptoEnginePool.PooledMac pooled = pool.borrowMac("HmacSHA256", key);
+        byte[] expected = pooled.mac.doFinal("message".getBytes(StandardCharsets.UTF_8));
+
+        pooled.mac.update("garbage".getBytes(StandardCharsets.UTF_8));
+        pool.returnMac("HmacSHA256", key, pooled);
+
+        Mac reused = pool.borrowMac("HmacSHA256", key).mac;
+        assertThat(reused.doFinal("message".getBytes(StandardCharsets.UTF_8))).isEqualTo(expected);
+        assertThat(pooled.computed).hasSize(32);
+    }
+
+    @Test
+    public void macsAreNotSharedAcrossKeys() throws Exception {
+        CryptoEnginePool pool = new CryptoEnginePool(2);
+        CryptoEnginePool.PooledMac mac = pool.borrowMac("HmacSHA256", key);
+        pool.returnMac("HmacSHA256", key, mac);
+
+        SecretKeySpec another = new SecretKeySpec("another".getBytes(StandardCharsets.UTF_8), "HMAC");
+        assertThat(pool.borrowMac("HmacSHA256", another)).isNotSameAs(mac);
+    }
+
+    @Test
+    public void poolIsBounded() throws Exception {
+        CryptoEnginePool pool = new CryptoEnginePool(1);
+        Signature first = pool.borrowSignature("SHA256withRSA");
+        Signature second = pool.borrowSignature("SHA256withRSA");
+        pool.returnSignature("SHA256withRSA", first);
+        pool.returnSignature("SHA256withRSA", second);
+
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+        assertThat(pool.getDiscardedCount()).isEqualTo(1);
+    }
+}
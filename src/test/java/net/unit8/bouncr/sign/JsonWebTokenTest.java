@@ -1,6 +1,7 @@
 package net.unit8.bouncr.sign;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import enkan.component.ComponentRelationship;
 import enkan.exception.MisconfigurationException;
 import enkan.system.EnkanSystem;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -8,13 +9,34 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -122,6 +144,60 @@ public class JsonWebTokenTest {
         assertThat(result).containsEntry("sub", "kawasima");
     }
 
+    // --- ECDSA / EdDSA algorithms ---
+
+    private KeyPair generateEcKeyPair(String curve) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        return generator.generateKeyPair();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"ES256,secp256r1,64", "ES384,secp384r1,96", "ES512,secp521r1,132"})
+    public void ecdsaRoundtrip(String alg, String curve, int signatureLength) throws Exception {
+        KeyPair keyPair = generateEcKeyPair(curve);
+        String token = sign(Map.of("sub", "kawasima"), alg, keyPair.getPrivate());
+
+        // JWS uses the raw R||S form, not DER
+        byte[] signature = Base64.getUrlDecoder().decode(token.substring(token.lastIndexOf('.') + 1));
+        assertThat(signature).hasSize(signatureLength);
+
+        Map<String, Object> result = jwt.unsign(token, keyPair.getPublic(), new TypeReference<Map<String, Object>>() {});
+        assertThat(result).containsEntry("sub", "kawasima");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"EdDSA", "Ed25519"})
+    public void ed25519Roundtrip(String alg) throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        String token = sign(Map.of("sub", "kawasima"), alg, keyPair.getPrivate());
+        Map<String, Object> result = jwt.unsign(token, keyPair.getPublic(), new TypeReference<Map<String, Object>>() {});
+        assertThat(result).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void ecdsaRoundtripWithEncodedKeys() throws Exception {
+        KeyPair keyPair = generateEcKeyPair("secp256r1");
+        String token = sign(Map.of("sub", "kawasima"), "ES256", keyPair.getPrivate().getEncoded());
+        Map<String, Object> result = jwt.unsign(token, keyPair.getPublic().getEncoded(), new TypeReference<Map<String, Object>>() {});
+        assertThat(result).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void ed25519RoundtripWithEncodedKeys() throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        String token = sign(Map.of("sub", "kawasima"), "EdDSA", keyPair.getPrivate().getEncoded());
+        Map<String, Object> result = jwt.unsign(token, keyPair.getPublic().getEncoded(), new TypeReference<Map<String, Object>>() {});
+        assertThat(result).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void ecdsaTokenWithWrongKeyReturnsNull() throws Exception {
+        String token = sign(Map.of("sub", "kawasima"), "ES256", generateEcKeyPair("secp256r1").getPrivate());
+        assertThat(jwt.unsign(token, generateEcKeyPair("secp256r1").getPublic(), new TypeReference<Map<String, Object>>() {})).isNull();
+        assertThat(jwt.unsign(token, generateKeyPair().getPublic(), new TypeReference<Map<String, Object>>() {})).isNull();
+    }
+
     // --- HMAC with HS256 (backward compat test) ---
 
     @Test
@@ -182,6 +258,56 @@ public class JsonWebTokenTest {
         assertThat(result).containsEntry("sub", "kawasima");
     }
 
+    // --- pre-parsed keys ---
+
+    @Test
+    public void rsaRoundtripWithJwtKey() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        JwtHeader header = new JwtHeader();
+        header.setAlg("RS256");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, JwtKey.of(keyPair.getPrivate()));
+        Map<String, Object> result = jwt.unsign(token, JwtKey.of(keyPair.getPublic()), new TypeReference<Map<String, Object>>() {});
+        assertThat(result).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void hmacRoundtripWithJwtKey() {
+        JwtKey key = JwtKey.hmac("my-test-secret-key".getBytes(StandardCharsets.UTF_8));
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, key);
+        Map<String, Object> result = jwt.unsign(token, key, new TypeReference<Map<String, Object>>() {});
+        assertThat(result).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void hmacTokenSignedWithPublicKeyBytesIsRejected() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        String forged = sign(Map.of("sub", "attacker"), "HS256", keyPair.getPublic().getEncoded());
+        assertThat(jwt.unsign(forged, keyPair.getPublic(), new TypeReference<Map<String, Object>>() {})).isNull();
+    }
+
+    @Test
+    public void signingWithKeyOfWrongTypeIsRejected() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        JwtHeader header = new JwtHeader();
+        header.setAlg("RS256");
+        JwtKey secret = JwtKey.hmac("secret".getBytes(StandardCharsets.UTF_8));
+        assertThatThrownBy(() -> jwt.sign(Map.of("sub", "kawasima"), header, secret))
+                .isInstanceOf(MisconfigurationException.class);
+    }
+
+    @Test
+    public void enginesAreReusedAcrossCalls() {
+        byte[] key = "my-test-secret-key".getBytes(StandardCharsets.UTF_8);
+        String token = sign(Map.of("sub", "kawasima"), "HS256", key);
+        for (int i = 0; i < 3; i++) {
+            assertThat(jwt.unsign(token, key, new TypeReference<Map<String, Object>>() {})).isNotNull();
+        }
+        assertThat(jwt.getEnginePool().getCreatedCount()).isEqualTo(1);
+        assertThat(jwt.getEnginePool().getReusedCount()).isEqualTo(3);
+    }
+
     // --- security: alg:none rejection ---
 
     @Test
@@ -224,6 +350,671 @@ public class JsonWebTokenTest {
         assertThat(jwt.unsign("", key, new TypeReference<Map<String, Object>>() {})).isNull();
     }
 
+    @Test
+    public void tamperedPayloadReturnsNull() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        String token = sign(Map.of("sub", "kawasima"), "HS256", key);
+        String[] parts = token.split("\\.");
+        Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+        String forged = parts[0] + "." + enc.encodeToString("{\"sub\":\"attacker\"}".getBytes(StandardCharsets.UTF_8)) + "." + parts[2];
+        assertThat(jwt.unsign(forged, key, new TypeReference<Map<String, Object>>() {})).isNull();
+    }
+
+    @Test
+    public void malformedRsaSignatureReturnsNull() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        String token = sign(Map.of("sub", "kawasima"), "RS256", keyPair.getPrivate());
+        String forged = token.substring(0, token.lastIndexOf('.') + 1) + "not*base64";
+        assertThat(jwt.unsign(forged, keyPair.getPublic(), new TypeReference<Map<String, Object>>() {})).isNull();
+    }
+
+    @Test
+    public void truncatedHmacSignatureReturnsNull() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        String token = sign(Map.of("sub", "kawasima"), "HS256", key);
+        assertThat(jwt.unsign(token.substring(0, token.length() - 1), key, new TypeReference<Map<String, Object>>() {})).isNull();
+        assertThat(jwt.unsign(token + "A", key, new TypeReference<Map<String, Object>>() {})).isNull();
+    }
+
+    @Test
+    public void extraDotInSignatureReturnsNull() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        String token = sign(Map.of("sub", "kawasima"), "HS256", key);
+        assertThat(jwt.unsign(token + ".extra", key, new TypeReference<Map<String, Object>>() {})).isNull();
+    }
+
+    // --- verify without binding ---
+
+    @Test
+    public void verifyReadsSingleClaims() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", "kawasima");
+        claims.put("exp", 4_102_444_800L);
+        claims.put("permissions", List.of("read", "write"));
+        claims.put("profile", Map.of("email", "test@example.com", "quote", "a \"b\" c"));
+        claims.put("flag", true);
+        claims.put("nothing", null);
+        String token = sign(claims, "HS256", key);
+
+        VerifiedJwt verified = jwt.verify(token, JwtKey.hmac(key));
+        assertThat(verified).isNotNull();
+        assertThat(verified.getHeader().getAlg()).isEqualTo("HS256");
+        assertThat(verified.getClaim("sub")).isEqualTo("kawasima");
+        assertThat(verified.getClaim("exp", Long.class)).isEqualTo(4_102_444_800L);
+        assertThat(verified.getClaim("permissions")).isEqualTo(List.of("read", "write"));
+        assertThat(verified.getClaim("profile")).isEqualTo(Map.of("email", "test@example.com", "quote", "a \"b\" c"));
+        assertThat(verified.getClaim("flag")).isEqualTo(true);
+        assertThat(verified.hasClaim("nothing")).isTrue();
+        assertThat(verified.getClaim("nothing")).isNull();
+        assertThat(verified.hasClaim("missing")).isFalse();
+        assertThat(verified.getClaim("missing")).isNull();
+    }
+
+    @Test
+    public void verifyBindsWholePayloadOnDemand() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        String token = sign(Map.of("sub", "kawasima"), "HS256", key);
+
+        VerifiedJwt verified = jwt.verify(token, JwtKey.hmac(key));
+        assertThat(verified.as(new TypeReference<Map<String, Object>>() {})).containsEntry("sub", "kawasima");
+        assertThat(verified.as(JwtClaim.class).getSub()).isEqualTo("kawasima");
+        assertThat(new String(verified.getPayload(), StandardCharsets.UTF_8)).isEqualTo("{\"sub\":\"kawasima\"}");
+    }
+
+    @Test
+    public void verifyReturnsNullForInvalidSignature() {
+        String token = sign(Map.of("sub", "kawasima"), "HS256", "key".getBytes(StandardCharsets.UTF_8));
+        assertThat(jwt.verify(token, JwtKey.hmac("other".getBytes(StandardCharsets.UTF_8)))).isNull();
+    }
+
+    // --- time claims ---
+
+    private static final long NOW = 1_800_000_000L;
+
+    private Map<String, Object> unsignAt(Map<String, Object> claims) {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        jwt.setClock(Clock.fixed(Instant.ofEpochSecond(NOW), ZoneOffset.UTC));
+        return jwt.unsign(sign(claims, "HS256", key), key, new TypeReference<Map<String, Object>>() {});
+    }
+
+    @Test
+    public void expiredTokenIsRejected() {
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", NOW + 1))).isNotNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", NOW))).isNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", NOW - 1))).isNull();
+    }
+
+    @Test
+    public void tokenBeforeNotBeforeIsRejected() {
+        assertThat(unsignAt(Map.of("sub", "kawasima", "nbf", NOW))).isNotNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "nbf", NOW + 1))).isNull();
+    }
+
+    @Test
+    public void tokenIssuedInTheFutureIsRejected() {
+        assertThat(unsignAt(Map.of("sub", "kawasima", "iat", NOW))).isNotNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "iat", NOW + 1))).isNull();
+    }
+
+    @Test
+    public void clockSkewIsTolerated() {
+        jwt.setClockSkew(Duration.ofSeconds(30));
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", NOW - 29))).isNotNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", NOW - 30))).isNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "nbf", NOW + 30))).isNotNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "nbf", NOW + 31))).isNull();
+    }
+
+    @Test
+    public void maxAgeRequiresRecentIat() {
+        jwt.setMaxAge(Duration.ofMinutes(5));
+        assertThat(unsignAt(Map.of("sub", "kawasima", "iat", NOW - 300))).isNotNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "iat", NOW - 301))).isNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima"))).isNull();
+    }
+
+    @Test
+    public void nonNumericTimeClaimIsRejected() {
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", "tomorrow"))).isNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", (double) NOW + 10.5))).isNotNull();
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", new BigInteger("99999999999999999999")))).isNotNull();
+    }
+
+    @Test
+    public void timeValidationCanBeDisabled() {
+        jwt.setValidateTimestamps(false);
+        assertThat(unsignAt(Map.of("sub", "kawasima", "exp", NOW - 1))).isNotNull();
+    }
+
+    @Test
+    public void defaultClockFollowsSystemTime() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis() / 1000L;
+        TypeReference<Map<String, Object>> type = new TypeReference<>() {};
+        assertThat(jwt.unsign(sign(Map.of("exp", now + 60), "HS256", key), key, type)).isNotNull();
+        assertThat(jwt.unsign(sign(Map.of("exp", now - 60), "HS256", key), key, type)).isNull();
+    }
+
+    @Test
+    public void freshTokenIsAcceptedWithTheDefaultClock() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        JwtKey verificationKey = JwtKey.hmac(key);
+        // Long enough to cross a second boundary while the coarse clock is still behind.
+        long deadline = System.currentTimeMillis() + 1_500L;
+        int rejected = 0;
+        while (System.currentTimeMillis() < deadline) {
+            long now = System.currentTimeMillis() / 1000L;
+            String token = sign(Map.of("sub", "kawasima", "iat", now, "nbf", now), "HS256", key);
+            if (jwt.verify(token, verificationKey) == null) rejected++;
+        }
+        assertThat(rejected).isZero();
+    }
+
+    @Test
+    public void verifyRejectsExpiredToken() {
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        String token = sign(Map.of("exp", 1L), "HS256", key);
+        assertThat(jwt.verify(token, JwtKey.hmac(key))).isNull();
+    }
+
+    // --- batch signing ---
+
+    @Test
+    public void signAllReturnsTokensInOrder() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        KeyPair keyPair = gen.generateKeyPair();
+        List<JwtClaim> claims = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            JwtClaim claim = new JwtClaim();
+            claim.setSub("user" + i);
+            claims.add(claim);
+        }
+        JwtHeader header = new JwtHeader();
+        header.setAlg("RS256");
+
+        List<String> tokens = jwt.signAll(claims, header, keyPair.getPrivate());
+        assertThat(tokens).hasSize(40);
+        for (int i = 0; i < 40; i++) {
+            assertThat(jwt.unsign(tokens.get(i), keyPair.getPublic(), JwtClaim.class).getSub()).isEqualTo("user" + i);
+        }
+    }
+
+    @Test
+    public void signAllOnVirtualThreads() {
+        byte[] key = "batch-key".getBytes(StandardCharsets.UTF_8);
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            jwt.setSigningExecutor(executor);
+            List<String> tokens = jwt.signAll(
+                    List.of(Map.of("sub", "a"), Map.of("sub", "b")), header, key);
+            assertThat(tokens).containsExactly(
+                    jwt.sign(Map.of("sub", "a"), header, key),
+                    jwt.sign(Map.of("sub", "b"), header, key));
+        }
+    }
+
+    @Test
+    public void signEachConsumesClaimsLazily() {
+        byte[] key = "batch-key".getBytes(StandardCharsets.UTF_8);
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        AtomicInteger produced = new AtomicInteger();
+        Iterator<Map<String, Object>> claims = Stream
+                .generate(() -> Map.<String, Object>of("sub", "user" + produced.getAndIncrement()))
+                .limit(100_000)
+                .iterator();
+
+        Iterator<String> tokens = jwt.signEach(claims, header, JwtKey.hmac(key));
+        for (int i = 0; i < 3; i++) {
+            assertThat(jwt.unsign(tokens.next(), key, JwtClaim.class).getSub()).isEqualTo("user" + i);
+        }
+        assertThat(produced.get()).isLessThanOrEqualTo(3 + 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void signAllPropagatesSigningErrors() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        PrivateKey rsaKey = gen.generateKeyPair().getPrivate();
+        assertThatThrownBy(() -> jwt.signAll(List.of(Map.of("sub", "a")), header, rsaKey))
+                .isInstanceOf(MisconfigurationException.class);
+        header.setAlg("XX999");
+        assertThatThrownBy(() -> jwt.signEach(List.of().iterator(), header, JwtKey.of(rsaKey)))
+                .isInstanceOf(MisconfigurationException.class);
+    }
+
+    // --- batch verification ---
+
+    @Test
+    public void verifyAllReturnsPerTokenResults() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        KeyPair first = gen.generateKeyPair();
+        KeyPair second = gen.generateKeyPair();
+        AtomicInteger resolutions = new AtomicInteger();
+        JwtKeyResolver resolver = header -> {
+            resolutions.incrementAndGet();
+            return switch (String.valueOf(header.getKid())) {
+                case "k1" -> JwtKey.of(first.getPublic());
+                case "k2" -> JwtKey.of(second.getPublic());
+                default -> null;
+            };
+        };
+
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            JwtHeader header = new JwtHeader();
+            header.setAlg("RS256");
+            header.setKid(i % 2 == 0 ? "k1" : "k2");
+            tokens.add(jwt.sign(Map.of("sub", "user" + i), header, (i % 2 == 0 ? first : second).getPrivate()));
+        }
+        JwtHeader wrongKid = new JwtHeader();
+        wrongKid.setAlg("RS256");
+        wrongKid.setKid("k2");
+        tokens.add(jwt.sign(Map.of("sub", "forged"), wrongKid, first.getPrivate()));
+        tokens.add(tokens.get(0));
+        tokens.add("malformed");
+        tokens.add(null);
+        tokens.add("eyJhbGciOiJub25lIn0.eyJzdWIiOiJ4In0.");
+
+        List<VerifiedJwt> results = jwt.verifyAll(tokens, resolver, ForkJoinPool.commonPool());
+        assertThat(results).hasSize(tokens.size());
+        for (int i = 0; i < 10; i++) {
+            assertThat(results.get(i).getClaim("sub")).isEqualTo("user" + i);
+        }
+        assertThat(results.get(10)).isNull();
+        assertThat(results.get(11)).isSameAs(results.get(0));
+        assertThat(results.subList(12, 15)).containsOnlyNulls();
+        assertThat(resolutions.get()).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    public void verifyAllWithSingleKey() {
+        byte[] key = "batch-key".getBytes(StandardCharsets.UTF_8);
+        List<String> tokens = List.of(
+                sign(Map.of("sub", "a"), "HS256", key),
+                sign(Map.of("sub", "b"), "HS512", key),
+                sign(Map.of("sub", "c"), "HS256", "other".getBytes(StandardCharsets.UTF_8)));
+        List<VerifiedJwt> results = jwt.verifyAll(tokens, JwtKey.hmac(key), Runnable::run);
+        assertThat(results.get(0).getClaim("sub")).isEqualTo("a");
+        assertThat(results.get(1).getClaim("sub")).isEqualTo("b");
+        assertThat(results.get(2)).isNull();
+        assertThat(jwt.verifyAll(List.of(), JwtKey.hmac(key), Runnable::run)).isEmpty();
+    }
+
+    // --- metrics ---
+
+    @Test
+    public void metricsRecordLatencyAndFailuresByReason() throws Exception {
+        RecordingMetrics metrics = new RecordingMetrics();
+        jwt.setMetrics(metrics);
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        TypeReference<Map<String, Object>> type = new TypeReference<>() {};
+        String token = sign(Map.of("sub", "kawasima"), "HS256", key);
+
+        assertThat(jwt.unsign(token, key, type)).isNotNull();
+        assertThat(metrics.signs).containsExactly("HS256");
+        assertThat(metrics.verifies).containsExactly("HS256");
+        assertThat(metrics.failures).isEmpty();
+
+        jwt.unsign(token, "other".getBytes(StandardCharsets.UTF_8), type);
+        jwt.unsign("not-a-token", key, type);
+        jwt.unsign(token, JwtKey.hmac(key).withAlgorithm("HS512"), type);
+        jwt.unsign(token, (JwtKeyResolver) header -> null, type);
+        jwt.unsign(sign(Map.of("exp", 1L), "HS256", key), key, type);
+        assertThatThrownBy(() -> jwt.unsign(token.replaceFirst("^[^.]+", "e30"), key, type))
+                .isInstanceOf(MisconfigurationException.class);
+        assertThat(metrics.failures).containsExactly(
+                VerificationFailure.BAD_SIGNATURE,
+                VerificationFailure.MALFORMED,
+                VerificationFailure.BAD_ALGORITHM,
+                VerificationFailure.UNKNOWN_KEY,
+                VerificationFailure.EXPIRED,
+                VerificationFailure.BAD_ALGORITHM);
+    }
+
+    @Test
+    public void metricsAreInjectedFromTheSystem() {
+        RecordingMetrics metrics = new RecordingMetrics();
+        EnkanSystem metricsSystem = EnkanSystem.of("metrics", metrics, "jwt", new JsonWebToken())
+                .relationships(ComponentRelationship.component("jwt").using("metrics"));
+        metricsSystem.start();
+        try {
+            JsonWebToken injected = metricsSystem.getComponent("jwt");
+            byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+            JwtHeader header = new JwtHeader();
+            header.setAlg("HS256");
+            injected.sign(Map.of("sub", "kawasima"), header, key);
+            assertThat(metrics.signs).containsExactly("HS256");
+        } finally {
+            metricsSystem.stop();
+        }
+    }
+
+    // --- Encoded header cache ---
+
+    private Map<String, Object> decodeHeader(String token) {
+        return jwt.decodePayload(token.substring(0, token.indexOf('.')), new TypeReference<Map<String, Object>>() {});
+    }
+
+    @Test
+    public void headerMutatedAfterSigningIsEncodedAgain() {
+        byte[] key = "my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8);
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        header.setKid("k1");
+        String first = jwt.sign(Map.of("sub", "kawasima"), header, key);
+        header.setKid("k2");
+        String second = jwt.sign(Map.of("sub", "kawasima"), header, key);
+
+        assertThat(decodeHeader(first)).containsEntry("kid", "k1");
+        assertThat(decodeHeader(second)).containsEntry("kid", "k2");
+    }
+
+    @Test
+    public void equalHeadersShareTheEncodedSegment() {
+        byte[] key = "my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8);
+        JwtHeader header1 = new JwtHeader();
+        header1.setAlg("HS256");
+        JwtHeader header2 = new JwtHeader();
+        header2.setAlg("HS256");
+        String first = jwt.sign(Map.of("sub", "kawasima"), header1, key);
+        String second = jwt.sign(Map.of("sub", "kawasima"), header2, key);
+
+        assertThat(first).isEqualTo(second);
+        assertThat(jwt.unsign(second, key, new TypeReference<Map<String, Object>>() {})).containsEntry("sub", "kawasima");
+    }
+
+    public static class TypedHeader extends JwtHeader {
+        public String getTyp() {
+            return "JWT";
+        }
+    }
+
+    @Test
+    public void headerSubclassIsNotCached() {
+        byte[] key = "my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8);
+        JwtHeader plain = new JwtHeader();
+        plain.setAlg("HS256");
+        jwt.sign(Map.of("sub", "kawasima"), plain, key);
+        TypedHeader typed = new TypedHeader();
+        typed.setAlg("HS256");
+        String token = jwt.sign(Map.of("sub", "kawasima"), typed, key);
+
+        assertThat(decodeHeader(token)).containsEntry("typ", "JWT");
+    }
+
+    @Test
+    public void headerCacheCanBeDisabled() {
+        jwt.setHeaderCacheSize(0);
+        byte[] key = "my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8);
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS384");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, key);
+        assertThat(decodeHeader(token)).containsEntry("alg", "HS384");
+    }
+
+    // --- Randomness ---
+
+    @Test
+    public void pssSigningWithoutStripesUsesThePrng() throws Exception {
+        AtomicBoolean used = new AtomicBoolean();
+        JsonWebToken unstriped = new JsonWebToken();
+        unstriped.setPrngStripes(1);
+        unstriped.setPrng(new SecureRandom() {
+            @Override
+            public void nextBytes(byte[] bytes) {
+                used.set(true);
+                super.nextBytes(bytes);
+            }
+        });
+        EnkanSystem unstripedSystem = EnkanSystem.of("jwt", unstriped);
+        unstripedSystem.start();
+        try {
+            KeyPair keyPair = generateKeyPair();
+            JwtHeader header = new JwtHeader();
+            header.setAlg("PS256");
+            String token = unstriped.sign(Map.of("sub", "kawasima"), header, keyPair.getPrivate());
+            assertThat(used).isTrue();
+            assertThat(unstriped.unsign(token, keyPair.getPublic(), new TypeReference<Map<String, Object>>() {})).containsEntry("sub", "kawasima");
+        } finally {
+            unstripedSystem.stop();
+        }
+    }
+
+    // --- Parsed header cache ---
+
+    @Test
+    public void cachedHeaderIsNotSharedWithCallers() {
+        JwtKey key = JwtKey.hmac("my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8));
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        header.setKid("k1");
+        String token = jwt.sign(Map.of("sub", "kawasima"), header, key);
+
+        jwt.verify(token, key).getHeader().setKid("tampered");
+        assertThat(jwt.verify(token, key).getHeader().getKid()).isEqualTo("k1");
+    }
+
+    @Test
+    public void onlyHeadersWithAValidSignatureAreCached() {
+        JwtKey key = JwtKey.hmac("my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8));
+        JwtKey otherKey = JwtKey.hmac("another-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8));
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        for (int i = 0; i < 32; i++) {
+            header.setKid("forged" + i);
+            String forged = jwt.sign(Map.of("sub", "attacker"), header, otherKey);
+            assertThat(jwt.precheck(forged, 8192, key)).isNull();
+            assertThat(jwt.verify(forged, key)).isNull();
+        }
+        assertThat(jwt.parsedHeaderCount()).isZero();
+
+        header.setKid("k1");
+        assertThat(jwt.verify(jwt.sign(Map.of("sub", "kawasima"), header, key), key)).isNotNull();
+        assertThat(jwt.parsedHeaderCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void headersWithDifferentKidsAreResolvedSeparately() {
+        JwtKey key1 = JwtKey.hmac("my-test-secret-key-for-hmac-tests-1".getBytes(StandardCharsets.UTF_8));
+        JwtKey key2 = JwtKey.hmac("my-test-secret-key-for-hmac-tests-2".getBytes(StandardCharsets.UTF_8));
+        JwtKeyResolver resolver = h -> "k1".equals(h.getKid()) ? key1 : "k2".equals(h.getKid()) ? key2 : null;
+        JwtHeader header1 = new JwtHeader();
+        header1.setAlg("HS256");
+        header1.setKid("k1");
+        JwtHeader header2 = new JwtHeader();
+        header2.setAlg("HS256");
+        header2.setKid("k2");
+        String token1 = jwt.sign(Map.of("sub", "one"), header1, key1);
+        String token2 = jwt.sign(Map.of("sub", "two"), header2, key2);
+
+        for (int i = 0; i < 2; i++) {
+            assertThat(jwt.unsign(token1, resolver, new TypeReference<Map<String, Object>>() {})).containsEntry("sub", "one");
+            assertThat(jwt.unsign(token2, resolver, new TypeReference<Map<String, Object>>() {})).containsEntry("sub", "two");
+        }
+    }
+
+    @Test
+    public void rejectedAlgorithmsAreRejectedEveryTime() {
+        Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+        String fakeToken = enc.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + enc.encodeToString("{\"sub\":\"attacker\"}".getBytes(StandardCharsets.UTF_8)) + ".";
+        JwtKey key = JwtKey.hmac("any-key".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> jwt.unsign(fakeToken, key, new TypeReference<Map<String, Object>>() {}))
+                    .isInstanceOf(MisconfigurationException.class);
+        }
+    }
+
+    // --- Precheck ---
+
+    @Test
+    public void precheckAcceptsPlausibleTokens() throws Exception {
+        JwtKey hmacKey = JwtKey.hmac("key".getBytes(StandardCharsets.UTF_8));
+        String hs256 = sign(Map.of("sub", "kawasima"), "HS256", "key".getBytes(StandardCharsets.UTF_8));
+        assertThat(jwt.precheck(hs256, 8192, hmacKey)).isNull();
+        assertThat(jwt.precheck(hs256, 8192, null)).isNull();
+
+        KeyPair keyPair = generateKeyPair();
+        String rs256 = sign(Map.of("sub", "kawasima"), "RS256", keyPair.getPrivate());
+        assertThat(jwt.precheck(rs256, 8192, JwtKey.of(keyPair.getPublic()))).isNull();
+    }
+
+    @Test
+    public void precheckRejectsMalformedTokens() {
+        JwtKey key = JwtKey.hmac("key".getBytes(StandardCharsets.UTF_8));
+        String token = sign(Map.of("sub", "kawasima"), "HS256", "key".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(jwt.precheck(token, token.length() - 1, key)).isEqualTo(VerificationFailure.MALFORMED);
+        assertThat(jwt.precheck(token.substring(0, token.lastIndexOf('.')), 8192, key)).isEqualTo(VerificationFailure.MALFORMED);
+        assertThat(jwt.precheck(token + ".x", 8192, key)).isEqualTo(VerificationFailure.MALFORMED);
+        assertThat(jwt.precheck(token.replace('.', '+').replaceFirst("\\+", "."), 8192, key)).isEqualTo(VerificationFailure.MALFORMED);
+        assertThat(jwt.precheck(token + "=", 8192, key)).isEqualTo(VerificationFailure.MALFORMED);
+        assertThat(jwt.precheck(token.substring(token.indexOf('.')), 8192, key)).isEqualTo(VerificationFailure.MALFORMED);
+        assertThat(jwt.precheck("bm90LWpzb24" + token.substring(token.indexOf('.')), 8192, key))
+                .isEqualTo(VerificationFailure.MALFORMED);
+        // null, [1] and {} as the header
+        for (String header : List.of("bnVsbA", "WzFd", "e30")) {
+            assertThat(jwt.precheck(header + token.substring(token.indexOf('.')), 8192, key))
+                    .isEqualTo(VerificationFailure.MALFORMED);
+        }
+    }
+
+    @Test
+    public void verifyRejectsNullHeaderAsMalformed() {
+        JwtKey key = JwtKey.hmac("key".getBytes(StandardCharsets.UTF_8));
+        String token = sign(Map.of("sub", "kawasima"), "HS256", "key".getBytes(StandardCharsets.UTF_8));
+        assertThatThrownBy(() -> jwt.verify("bnVsbA" + token.substring(token.indexOf('.')), key))
+                .isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    public void precheckRejectsDisallowedAlgorithms() throws Exception {
+        Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+        String none = enc.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + enc.encodeToString("{\"sub\":\"attacker\"}".getBytes(StandardCharsets.UTF_8)) + ".";
+        assertThat(jwt.precheck(none, 8192, null)).isEqualTo(VerificationFailure.BAD_ALGORITHM);
+
+        JwtKey key = JwtKey.hmac("key".getBytes(StandardCharsets.UTF_8));
+        String hs256 = sign(Map.of("sub", "kawasima"), "HS256", "key".getBytes(StandardCharsets.UTF_8));
+        assertThat(jwt.precheck(hs256, 8192, key.withAlgorithm("HS512"))).isEqualTo(VerificationFailure.BAD_ALGORITHM);
+        assertThat(jwt.precheck(hs256, 8192, JwtKey.of(generateKeyPair().getPublic())))
+                .isEqualTo(VerificationFailure.BAD_ALGORITHM);
+    }
+
+    @Test
+    public void precheckRejectsSignaturesOfTheWrongLength() throws Exception {
+        JwtKey hmacKey = JwtKey.hmac("key".getBytes(StandardCharsets.UTF_8));
+        String hs256 = sign(Map.of("sub", "kawasima"), "HS256", "key".getBytes(StandardCharsets.UTF_8));
+        assertThat(jwt.precheck(hs256.substring(0, hs256.length() - 1), 8192, hmacKey))
+                .isEqualTo(VerificationFailure.BAD_SIGNATURE);
+        assertThat(jwt.precheck(hs256 + "A", 8192, null)).isEqualTo(VerificationFailure.BAD_SIGNATURE);
+
+        KeyPair keyPair = generateKeyPair();
+        String rs256 = sign(Map.of("sub", "kawasima"), "RS256", keyPair.getPrivate());
+        String truncated = rs256.substring(0, rs256.length() - 4);
+        assertThat(jwt.precheck(truncated, 8192, JwtKey.of(keyPair.getPublic()))).isEqualTo(VerificationFailure.BAD_SIGNATURE);
+        // Without the key, the length of an RSA signature is unknown
+        assertThat(jwt.precheck(truncated, 8192, null)).isNull();
+    }
+
+    // --- Async ---
+
+    @Test
+    public void signAndUnsignAsync() throws Exception {
+        JwtKey key = JwtKey.hmac("my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8));
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        String token = jwt.signAsync(Map.of("sub", "kawasima"), header, key).get(10, TimeUnit.SECONDS);
+
+        Map<String, Object> claims = jwt.unsignAsync(token, key, new TypeReference<Map<String, Object>>() {})
+                .get(10, TimeUnit.SECONDS);
+        assertThat(claims).containsEntry("sub", "kawasima");
+        assertThat(jwt.unsignAsync(token + "x", key, new TypeReference<Map<String, Object>>() {}).get(10, TimeUnit.SECONDS)).isNull();
+    }
+
+    @Test
+    public void asyncFailsAfterStop() {
+        JsonWebToken stoppedJwt = new JsonWebToken();
+        EnkanSystem stoppedSystem = EnkanSystem.of("jwt", stoppedJwt);
+        stoppedSystem.start();
+        stoppedSystem.stop();
+        JwtKey key = JwtKey.hmac("my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8));
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+
+        assertThatThrownBy(() -> stoppedJwt.signAsync(Map.of("sub", "kawasima"), header, key))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("JsonWebToken is not started");
+        assertThatThrownBy(() -> stoppedJwt.unsignAsync("a.b.c", key, new TypeReference<Map<String, Object>>() {}))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void asyncRunsOnVirtualThreadsWhenEnabled() throws Exception {
+        JsonWebToken virtualJwt = new JsonWebToken();
+        virtualJwt.setAsyncVirtualThreads(true);
+        EnkanSystem virtualSystem = EnkanSystem.of("jwt", virtualJwt);
+        virtualSystem.start();
+        try {
+            JwtKey key = JwtKey.hmac("my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8));
+            JwtHeader header = new JwtHeader();
+            header.setAlg("HS256");
+            header.setKid("k1");
+            String token = virtualJwt.sign(Map.of("sub", "kawasima"), header, key);
+            AtomicBoolean virtual = new AtomicBoolean();
+            JwtKeyResolver resolver = h -> {
+                virtual.set(Thread.currentThread().isVirtual());
+                return key;
+            };
+            assertThat(virtualJwt.unsignAsync(token, resolver, new TypeReference<Map<String, Object>>() {}).get(10, TimeUnit.SECONDS))
+                    .containsEntry("sub", "kawasima");
+            assertThat(virtual).isTrue();
+        } finally {
+            virtualSystem.stop();
+        }
+    }
+
+    @Test
+    public void asyncRejectsTasksBeyondCapacity() throws Exception {
+        JsonWebToken boundedJwt = new JsonWebToken();
+        boundedJwt.setAsyncCapacity(1);
+        EnkanSystem boundedSystem = EnkanSystem.of("jwt", boundedJwt);
+        boundedSystem.start();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            JwtKey key = JwtKey.hmac("my-test-secret-key-for-hmac-tests".getBytes(StandardCharsets.UTF_8));
+            JwtHeader header = new JwtHeader();
+            header.setAlg("HS256");
+            header.setKid("k1");
+            String token = boundedJwt.sign(Map.of("sub", "kawasima"), header, key);
+            JwtKeyResolver blocking = h -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return key;
+            };
+            CompletableFuture<Map<String, Object>> first = boundedJwt.unsignAsync(token, blocking, new TypeReference<Map<String, Object>>() {});
+            CompletableFuture<Map<String, Object>> second = boundedJwt.unsignAsync(token, key, new TypeReference<Map<String, Object>>() {});
+
+            assertThat(second).isCompletedExceptionally();
+            assertThatThrownBy(second::join).hasCauseInstanceOf(RejectedExecutionException.class);
+            release.countDown();
+            assertThat(first.get(10, TimeUnit.SECONDS)).containsEntry("sub", "kawasima");
+        } finally {
+            release.countDown();
+            boundedSystem.stop();
+        }
+    }
+
     // --- decodePayload ---
 
     @Test
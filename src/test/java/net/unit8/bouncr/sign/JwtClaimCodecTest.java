@@ -0,0 +1,112 @@
+package net.unit8.bouncr.sign;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JwtClaimCodecTest {
+    private ObjectMapper mapper;
+
+    @BeforeEach
+    public void setup() {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        mapper.configure(DeserializationFeature.UNWRAP_SINGLE_VALUE_ARRAYS, true);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    private JwtClaim fullClaim() {
+        JwtClaim claim = new JwtClaim();
+        claim.setIss("https://example.com");
+        claim.setSub("kawasima");
+        claim.setAud("myapp");
+        claim.setExp(4102444800L);
+        claim.setNbf(1700000000L);
+        claim.setIat(1700000000L);
+        claim.setAuthTime(1700000000L);
+        claim.setNonce("n-0S6_WzA2Mj");
+        claim.setAcr("urn:mace:incommon:iap:bronze");
+        claim.setAmr("pwd");
+        claim.setAzp("myapp");
+        claim.setName("Yoshitaka Kawashima");
+        claim.setGivenName("Yoshitaka");
+        claim.setFamilyName("Kawashima");
+        claim.setMiddleName("吉隆");
+        claim.setNickname("kawasima");
+        claim.setPreferredUsername("kawasima");
+        claim.setProfile("https://example.com/kawasima");
+        claim.setPicture("https://example.com/kawasima.png");
+        claim.setWebsite("https://example.com");
+        claim.setEmail("kawasima@example.com");
+        claim.setEmailVerified(true);
+        claim.setGender("male");
+        claim.setBirthdate("1975-01-01");
+        claim.setZoneinfo("Asia/Tokyo");
+        claim.setLocale("ja-JP");
+        claim.setPhoneNumber("+81-90-1234-5678");
+        claim.setPhoneNumberVerified(false);
+        ClaimAddress address = new ClaimAddress();
+        address.setLocality("Chiyoda-ku");
+        address.setCountry("JP");
+        claim.setAddress(address);
+        claim.setUpdatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+        return claim;
+    }
+
+    private JwtClaim read(String json) throws Exception {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return JwtClaimCodec.read(mapper, bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void writesTheSameBytesAsTheMapper() throws Exception {
+        JwtClaim claim = fullClaim();
+        assertThat(new String(JwtClaimCodec.write(mapper, claim), StandardCharsets.UTF_8))
+                .isEqualTo(mapper.writeValueAsString(claim));
+    }
+
+    @Test
+    public void omitsNullClaims() throws Exception {
+        JwtClaim claim = new JwtClaim();
+        claim.setSub("kawasima \"quoted\"");
+        assertThat(new String(JwtClaimCodec.write(mapper, claim), StandardCharsets.UTF_8))
+                .isEqualTo(mapper.writeValueAsString(claim));
+    }
+
+    @Test
+    public void readsWhatItWrites() throws Exception {
+        byte[] json = JwtClaimCodec.write(mapper, fullClaim());
+        JwtClaim claim = JwtClaimCodec.read(mapper, json, 0, json.length);
+        assertThat(mapper.writeValueAsString(claim)).isEqualTo(mapper.writeValueAsString(fullClaim()));
+    }
+
+    @Test
+    public void skipsUnknownClaims() throws Exception {
+        JwtClaim claim = read("{\"sub\":\"kawasima\",\"roles\":[\"admin\",{\"x\":1}],\"exp\":null}");
+        assertThat(claim.getSub()).isEqualTo("kawasima");
+        assertThat(claim.getExp()).isNull();
+    }
+
+    @Test
+    public void fallsBackToTheMapperForCoercions() throws Exception {
+        JwtClaim claim = read("{\"aud\":[\"myapp\"],\"exp\":\"4102444800\",\"iat\":1.7E9,\"email_verified\":\"true\"}");
+        assertThat(claim.getAud()).isEqualTo("myapp");
+        assertThat(claim.getExp()).isEqualTo(4102444800L);
+        assertThat(claim.getIat()).isEqualTo(1700000000L);
+        assertThat(claim.getEmailVerified()).isTrue();
+    }
+
+    @Test
+    public void nullPayloadReadsAsNull() throws Exception {
+        assertThat(read("null")).isNull();
+    }
+}
@@ -0,0 +1,204 @@
+package net.unit8.bouncr.sign;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import enkan.exception.MisconfigurationException;
+import enkan.system.EnkanSystem;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.*;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JwtKeyRegistryTest {
+    static {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private static final TypeReference<Map<String, Object>> CLAIMS = new TypeReference<>() {};
+    private static final Base64.Encoder ENC = Base64.getUrlEncoder().withoutPadding();
+
+    @TempDir
+    Path tempDir;
+
+    private EnkanSystem system;
+    private JsonWebToken jwt;
+
+    @BeforeEach
+    public void setup() {
+        system = EnkanSystem.of("jwt", new JsonWebToken());
+        system.start();
+        jwt = system.getComponent("jwt");
+    }
+
+    @AfterEach
+    public void teardown() {
+        system.stop();
+    }
+
+    private String sign(String alg, String kid, PrivateKey key) {
+        JwtHeader header = new JwtHeader();
+        header.setAlg(alg);
+        header.setKid(kid);
+        return jwt.sign(Map.of("sub", "kawasima"), header, key);
+    }
+
+    private static String unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0) bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        return ENC.encodeToString(bytes);
+    }
+
+    private static String rsaJwk(String kid, RSAPublicKey key) {
+        return "{\"kty\":\"RSA\",\"kid\":\"" + kid + "\",\"n\":\"" + unsigned(key.getModulus())
+                + "\",\"e\":\"" + unsigned(key.getPublicExponent()) + "\"}";
+    }
+
+    private static KeyPair rsaKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private Path writeJwks(String... jwks) throws Exception {
+        Path path = tempDir.resolve("jwks.json");
+        Files.writeString(path, "{\"keys\":[" + String.join(",", jwks) + "]}");
+        return path;
+    }
+
+    @Test
+    public void resolvesKeyByKid() throws Exception {
+        KeyPair first = rsaKeyPair();
+        KeyPair second = rsaKeyPair();
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        registry.load(writeJwks(rsaJwk("k1", (RSAPublicKey) first.getPublic()),
+                rsaJwk("k2", (RSAPublicKey) second.getPublic())));
+
+        assertThat(jwt.unsign(sign("RS256", "k1", first.getPrivate()), registry, CLAIMS)).containsEntry("sub", "kawasima");
+        assertThat(jwt.unsign(sign("RS256", "k2", second.getPrivate()), registry, CLAIMS)).containsEntry("sub", "kawasima");
+        assertThat(jwt.unsign(sign("RS256", "k2", first.getPrivate()), registry, CLAIMS)).isNull();
+        assertThat(jwt.unsign(sign("RS256", "unknown", first.getPrivate()), registry, CLAIMS)).isNull();
+    }
+
+    @Test
+    public void parsesEcOkpAndOctKeys() throws Exception {
+        KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair ec = ecGenerator.generateKeyPair();
+        ECPublicKey ecPublic = (ECPublicKey) ec.getPublic();
+        KeyPair ed = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        byte[] edEncoded = ed.getPublic().getEncoded();
+        byte[] secret = "jwks-shared-secret".getBytes(StandardCharsets.UTF_8);
+
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        registry.load(writeJwks(
+                "{\"kty\":\"EC\",\"kid\":\"ec\",\"crv\":\"P-256\",\"x\":\"" + unsigned(ecPublic.getW().getAffineX())
+                        + "\",\"y\":\"" + unsigned(ecPublic.getW().getAffineY()) + "\"}",
+                "{\"kty\":\"OKP\",\"kid\":\"ed\",\"crv\":\"Ed25519\",\"x\":\""
+                        + ENC.encodeToString(Arrays.copyOfRange(edEncoded, edEncoded.length - 32, edEncoded.length)) + "\"}",
+                "{\"kty\":\"oct\",\"kid\":\"hs\",\"k\":\"" + ENC.encodeToString(secret) + "\"}",
+                "{\"kty\":\"oct\",\"kid\":\"enc\",\"use\":\"enc\",\"k\":\"" + ENC.encodeToString(secret) + "\"}"));
+
+        assertThat(registry.getKeys()).containsOnlyKeys("ec", "ed", "hs");
+        assertThat(jwt.unsign(sign("ES256", "ec", ec.getPrivate()), registry, CLAIMS)).containsEntry("sub", "kawasima");
+        assertThat(jwt.unsign(sign("EdDSA", "ed", ed.getPrivate()), registry, CLAIMS)).containsEntry("sub", "kawasima");
+
+        JwtHeader header = new JwtHeader();
+        header.setAlg("HS256");
+        header.setKid("hs");
+        String hmacToken = jwt.sign(Map.of("sub", "kawasima"), header, secret);
+        assertThat(jwt.unsign(hmacToken, registry, CLAIMS)).containsEntry("sub", "kawasima");
+    }
+
+    @Test
+    public void jwkAlgorithmPinsTheKey() throws Exception {
+        KeyPair keyPair = rsaKeyPair();
+        String jwk = rsaJwk("k1", (RSAPublicKey) keyPair.getPublic()).replace("}", ",\"alg\":\"PS256\"}");
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        registry.load(writeJwks(jwk));
+
+        assertThat(jwt.unsign(sign("PS256", "k1", keyPair.getPrivate()), registry, CLAIMS)).isNotNull();
+        assertThat(jwt.unsign(sign("RS256", "k1", keyPair.getPrivate()), registry, CLAIMS)).isNull();
+    }
+
+    @Test
+    public void tokenWithoutKidUsesTheOnlyKey() throws Exception {
+        KeyPair keyPair = rsaKeyPair();
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        registry.setKeys(Map.of("k1", JwtKey.of(keyPair.getPublic())));
+        assertThat(jwt.unsign(sign("RS256", null, keyPair.getPrivate()), registry, CLAIMS)).isNotNull();
+
+        registry.setKeys(Map.of("k1", JwtKey.of(keyPair.getPublic()), "k2", JwtKey.of(rsaKeyPair().getPublic())));
+        assertThat(jwt.unsign(sign("RS256", null, keyPair.getPrivate()), registry, CLAIMS)).isNull();
+    }
+
+    @Test
+    public void invalidJwksIsRejected() throws Exception {
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        Path path = tempDir.resolve("broken.json");
+        Files.writeString(path, "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"k1\"}]}");
+        assertThatThrownBy(() -> registry.load(path)).isInstanceOf(java.io.IOException.class);
+        assertThat(registry.getKeys()).isEmpty();
+    }
+
+    @Test
+    public void startFailsWhenJwksCannotBeLoaded() throws Exception {
+        Path path = tempDir.resolve("broken.json");
+        Files.writeString(path, "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"k1\"}]}");
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        registry.setJwksPath(path);
+        EnkanSystem registrySystem = EnkanSystem.of("keys", registry);
+        try {
+            assertThatThrownBy(registrySystem::start)
+                    .isInstanceOfSatisfying(MisconfigurationException.class,
+                            e -> assertThat(e.getCode()).isEqualTo("bouncr.INVALID_JWKS"));
+        } finally {
+            registrySystem.stop();
+        }
+    }
+
+    @Test
+    public void reloadsJwksFileWhenItChanges() throws Exception {
+        KeyPair oldPair = rsaKeyPair();
+        KeyPair newPair = rsaKeyPair();
+        Path path = writeJwks(rsaJwk("old", (RSAPublicKey) oldPair.getPublic()));
+
+        JwtKeyRegistry registry = new JwtKeyRegistry();
+        registry.setJwksPath(path);
+        registry.setReloadInterval(Duration.ofMillis(20));
+        EnkanSystem registrySystem = EnkanSystem.of("keys", registry);
+        registrySystem.start();
+        try {
+            assertThat(registry.getKeys()).containsOnlyKeys("old");
+
+            writeJwks(rsaJwk("old", (RSAPublicKey) oldPair.getPublic()), rsaJwk("new", (RSAPublicKey) newPair.getPublic()));
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!registry.getKeys().containsKey("new") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(jwt.unsign(sign("RS256", "new", newPair.getPrivate()), registry, CLAIMS)).isNotNull();
+        } finally {
+            registrySystem.stop();
+        }
+    }
+}
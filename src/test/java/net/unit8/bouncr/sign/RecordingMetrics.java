@@ -0,0 +1,55 @@
+package net.unit8.bouncr.sign;
+
+import enkan.component.ComponentLifecycle;
+import enkan.component.SystemComponent;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** A metrics component that records every call, for tests. */
+public class RecordingMetrics extends SystemComponent<RecordingMetrics> implements BouncrMetrics {
+    public final List<String> signs = new CopyOnWriteArrayList<>();
+    public final List<String> verifies = new CopyOnWriteArrayList<>();
+    public final List<VerificationFailure> failures = new CopyOnWriteArrayList<>();
+    public final List<String> cacheAccesses = new CopyOnWriteArrayList<>();
+    public final List<Method> denials = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void recordSign(String alg, long nanos) {
+        signs.add(alg);
+    }
+
+    @Override
+    public void recordVerify(String alg, long nanos) {
+        verifies.add(alg);
+    }
+
+    @Override
+    public void recordVerificationFailure(VerificationFailure reason) {
+        failures.add(reason);
+    }
+
+    @Override
+    public void recordCacheAccess(String cache, boolean hit) {
+        cacheAccesses.add(cache + (hit ? ":hit" : ":miss"));
+    }
+
+    @Override
+    public void recordDenial(Method controllerMethod) {
+        denials.add(controllerMethod);
+    }
+
+    @Override
+    protected ComponentLifecycle<RecordingMetrics> lifecycle() {
+        return new ComponentLifecycle<>() {
+            @Override
+            public void start(RecordingMetrics component) {
+            }
+
+            @Override
+            public void stop(RecordingMetrics component) {
+            }
+        };
+    }
+}
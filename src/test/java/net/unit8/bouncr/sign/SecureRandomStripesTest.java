@@ -0,0 +1,77 @@
+package net.unit8.bouncr.sign;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SecureRandomStripesTest {
+    /** Counts its calls and returns a fixed byte, so that it can stand in as a deterministic seed source. */
+    private static class FixedRandom extends SecureRandom {
+        final AtomicInteger calls = new AtomicInteger();
+        private final byte value;
+
+        FixedRandom(int value) {
+            this.value = (byte) value;
+        }
+
+        @Override
+        public void nextBytes(byte[] bytes) {
+            calls.incrementAndGet();
+            Arrays.fill(bytes, value);
+        }
+
+        @Override
+        public byte[] generateSeed(int numBytes) {
+            byte[] seed = new byte[numBytes];
+            nextBytes(seed);
+            return seed;
+        }
+    }
+
+    private static byte[] nextBytes(SecureRandomStripes stripes) {
+        byte[] bytes = new byte[32];
+        stripes.current().nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void sizeIsRoundedUpToPowerOfTwo() {
+        assertThat(new SecureRandomStripes(new SecureRandom(), 1).size()).isEqualTo(1);
+        assertThat(new SecureRandomStripes(new SecureRandom(), 6).size()).isEqualTo(8);
+        assertThat(new SecureRandomStripes(new SecureRandom(), 8).size()).isEqualTo(8);
+    }
+
+    @Test
+    public void instancesAreCreatedOnFirstUseFromTheSeedSource() {
+        FixedRandom seedSource = new FixedRandom(1);
+        SecureRandomStripes stripes = new SecureRandomStripes(seedSource, 4);
+        assertThat(seedSource.calls).hasValue(0);
+
+        SecureRandom random = stripes.current();
+        assertThat(stripes.current()).isSameAs(random);
+        assertThat(seedSource.calls).hasValue(1);
+        random.nextBytes(new byte[32]);
+        assertThat(seedSource.calls).hasValue(2);
+    }
+
+    @Test
+    public void outputIsDerivedFromTheSeedSource() {
+        byte[] first = nextBytes(new SecureRandomStripes(new FixedRandom(1), 4));
+        assertThat(nextBytes(new SecureRandomStripes(new FixedRandom(1), 4))).isEqualTo(first);
+        assertThat(nextBytes(new SecureRandomStripes(new FixedRandom(2), 4))).isNotEqualTo(first);
+    }
+
+    @Test
+    public void virtualThreadsShareTheStripes() throws Exception {
+        SecureRandomStripes stripes = new SecureRandomStripes(new SecureRandom(), 1);
+        AtomicReference<SecureRandom> fromVirtual = new AtomicReference<>();
+        Thread.ofVirtual().start(() -> fromVirtual.set(stripes.current())).join();
+
+        assertThat(fromVirtual.get()).isSameAs(stripes.current());
+    }
+}